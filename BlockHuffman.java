@@ -0,0 +1,252 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Block mode Huffman compression of raw bytes, run in parallel on a ForkJoinPool
+ * Files are accessed through FileChannel memory mappings, so blocks are counted, encoded and decoded in place;
+ * blocks are slices of mappings of up to MAP_SEGMENT bytes, so even huge files need only a few mappings
+ * The file is split into fixed-size blocks; blocks are counted in parallel, the histograms merged into one code,
+ * and then blocks are encoded in parallel, each starting on a byte boundary
+ * A block index in the header records each block's compressed size, so blocks can also be decoded in parallel
+ *
+ * Compressed file layout: magic, version, original length, block size, code table (CanonicalCode.write),
+ * number of blocks, compressed length of each block, then the blocks back to back
+ */
+public class BlockHuffman {
+    public static final int MAGIC = 0x48554642;                 // "HUFB"
+    public static final int VERSION = 1;
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;       // 1 MB
+    public static final int MIN_BLOCK_SIZE = 1 << 12;           // keeps the per-block histograms small next to the blocks
+    public static final int MAX_BLOCK_SIZE = 1 << 26;           // keeps every compressed block length within an int
+    static final long MAP_SEGMENT = 1L << 30;                   // bytes per mapping, like HuffmanEncoding.ByteFrequencies
+    public static final String COMPRESSED = "_block_compressed.txt";        // output names, apart from HuffmanEncoding's as the format differs
+    public static final String DECOMPRESSED = "_block_decompressed.txt";
+
+    /**
+     * Compresses pathName + ".txt" to pathName + COMPRESSED with 1 MB blocks on the common pool
+     */
+    public static void compress(String pathName) throws IOException {
+        compress(pathName, DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Compresses pathName + ".txt" to pathName + COMPRESSED, blockSize bytes per block, on the given pool
+     */
+    public static void compress(String pathName, int blockSize, ForkJoinPool pool) throws IOException {
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must be " + MIN_BLOCK_SIZE + " through " + MAX_BLOCK_SIZE + ": " + blockSize);
+        }
+        try (FileChannel input = FileChannel.open(Paths.get(pathName + ".txt"), READ);
+             FileChannel output = FileChannel.open(Paths.get(pathName + COMPRESSED), CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+            long size = input.size();
+            int blocks = (int) ((size + blockSize - 1) / blockSize);
+            long[] starts = new long[blocks], counts = new long[blocks];
+            for (int block = 0; block < blocks; block++) {
+                starts[block] = (long) block * blockSize;
+                counts[block] = Math.min(blockSize, size - starts[block]);
+            }
+            ByteBuffer[] data = mapRegions(input, FileChannel.MapMode.READ_ONLY, starts, counts);
+
+            // 1: count every block in parallel, then merge
+            int[][] histograms = new int[blocks][];                                 // a block's counts fit in ints
+            run(pool, blocks, block -> {
+                int[] histogram = new int[256];
+                for (int i = 0, end = data[block].limit(); i < end; i++) histogram[data[block].get(i) & 0xFF]++;
+                histograms[block] = histogram;
+            });
+            long[] total = new long[256];
+            for (int[] histogram : histograms) {
+                for (int b = 0; b < 256; b++) total[b] += histogram[b];
+            }
+
+            // 2: one code for all blocks; each block's compressed length follows from its histogram
+            CanonicalCode code = buildCode(total);
+            int[] lengths = new int[256];
+            for (int i = 0; i < code.size(); i++) lengths[code.getSymbol(i)] = code.getLength(i);
+            int[] compressed = new int[blocks];
+            for (int block = 0; block < blocks; block++) {
+                long bits = 0;
+                for (int b = 0; b < 256; b++) bits += (long) histograms[block][b] * lengths[b];
+                compressed[block] = (int) ((bits + 7) / 8);
+            }
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(header);
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(size);
+            out.writeInt(blockSize);
+            code.write(out);
+            out.writeInt(blocks);
+            for (int length : compressed) out.writeInt(length);
+            out.flush();
+            writeFully(output, ByteBuffer.wrap(header.toByteArray()), 0);
+
+            long[] offsets = new long[blocks], sizes = new long[blocks];          // where each block goes, so blocks can be written in any order
+            long offset = header.size();
+            for (int block = 0; block < blocks; block++) {
+                offsets[block] = offset;
+                sizes[block] = compressed[block];
+                offset += compressed[block];
+            }
+            ByteBuffer[] targets = mapRegions(output, FileChannel.MapMode.READ_WRITE, offsets, sizes);
+
+            // 3: encode every block in parallel from its slice of the input straight into its slice of the output
+            HuffmanEncoder encoder = new HuffmanEncoder(code);
+            run(pool, blocks, block -> encoder.encode(data[block], targets[block]));
+        }
+    }
+
+    /**
+     * Decompresses pathName + COMPRESSED (written by compress) to pathName + DECOMPRESSED on the common pool
+     */
+    public static void decompress(String pathName) throws IOException {
+        decompress(pathName, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decompresses pathName + COMPRESSED (written by compress) to pathName + DECOMPRESSED, decoding blocks on the given pool
+     */
+    public static void decompress(String pathName, ForkJoinPool pool) throws IOException {
+        try (FileChannel input = FileChannel.open(Paths.get(pathName + COMPRESSED), READ);
+             FileChannel output = FileChannel.open(Paths.get(pathName + DECOMPRESSED), CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(input)));     // header only; blocks are read at their positions
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a block compressed file: " + pathName + COMPRESSED);
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported block compressed file version " + version);
+            }
+            long size = in.readLong();
+            int blockSize = in.readInt();
+            CanonicalCode code = CanonicalCode.read(in);
+            int blocks = in.readInt();
+            if (size < 0 || blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE || blocks != (size + blockSize - 1) / blockSize) {
+                throw new IOException("Corrupt block index");
+            }
+            int[] compressed = new int[blocks];
+            for (int block = 0; block < blocks; block++) compressed[block] = in.readInt();
+            long headerLength = 4 + 1 + 8 + 4 + (4 + 3L * code.size()) + 4 + 4L * blocks;
+
+            long[] offsets = new long[blocks], lengths = new long[blocks];
+            long[] starts = new long[blocks], counts = new long[blocks];
+            long offset = headerLength;
+            for (int block = 0; block < blocks; block++) {
+                offsets[block] = offset;
+                lengths[block] = compressed[block];
+                offset += compressed[block];
+                starts[block] = (long) block * blockSize;
+                counts[block] = Math.min(blockSize, size - starts[block]);
+            }
+            ByteBuffer[] bits = mapRegions(input, FileChannel.MapMode.READ_ONLY, offsets, lengths);
+            ByteBuffer[] out = mapRegions(output, FileChannel.MapMode.READ_WRITE, starts, counts);
+
+            HuffmanDecoder decoder = code.size() > 1 ? code.decoder() : null;      // a lone symbol takes no bits
+            run(pool, blocks, block -> {                                            // decode from a slice of the block straight into a slice of its output
+                int count = (int) counts[block];
+                ByteBuffer data = out[block];
+                if (decoder == null) {
+                    byte symbol = (byte) code.getSymbol(0);
+                    for (int i = 0; i < count; i++) data.put(i, symbol);
+                }
+                else {
+                    decoder.decode(bits[block], data, count);
+                }
+            });
+        }
+    }
+
+    /**
+     * Builds the canonical code for a byte histogram, limited to CodeLengths.DEFAULT_MAX_LENGTH bits so every code
+     * decodes in at most two table lookups
+     */
+    static CanonicalCode buildCode(long[] histogram) {
+        return CanonicalCode.fromFrequencies(histogram, CodeLengths.DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * Maps back-to-back regions [starts[i], starts[i] + lengths[i]) of the channel and returns a slice for each region
+     * Consecutive regions share one mapping of at most MAP_SEGMENT bytes (a region that is larger gets its own), so a
+     * file needs a handful of mappings rather than one or more per block; mappings are only released by the garbage
+     * collector, and too many of them run into the operating system's limit (vm.max_map_count on Linux)
+     */
+    static ByteBuffer[] mapRegions(FileChannel channel, FileChannel.MapMode mode, long[] starts, long[] lengths) throws IOException {
+        ByteBuffer[] slices = new ByteBuffer[starts.length];
+        int first = 0;
+        while (first < starts.length) {
+            long start = starts[first];
+            int last = first + 1;                                                   // regions first through last-1 go in this mapping
+            while (last < starts.length && starts[last] + lengths[last] - start <= MAP_SEGMENT) last++;
+            ByteBuffer segment = channel.map(mode, start, starts[last - 1] + lengths[last - 1] - start);
+            for (int i = first; i < last; i++) {
+                slices[i] = segment.slice((int) (starts[i] - start), (int) lengths[i]);
+            }
+            first = last;
+        }
+        return slices;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Work done for one block; may throw IOException unlike the java.util.function interfaces
+     */
+    interface BlockJob {
+        void run(int block) throws IOException;
+    }
+
+    // runs job for blocks 0 through blocks-1 on the pool, rethrowing the first IOException
+    static void run(ForkJoinPool pool, int blocks, BlockJob job) throws IOException {
+        if (blocks == 0) return;
+        try {
+            pool.invoke(new BlockRange(job, 0, blocks));
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Splits a range of blocks in half until single blocks are left, so idle workers can steal halves
+     */
+    private static class BlockRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BlockJob job;
+        private final int from, to;
+
+        BlockRange(BlockJob job, int from, int to) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                try {
+                    job.run(from);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BlockRange(job, from, middle), new BlockRange(job, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A region quadtree: space is split at the middle of each region rather than at a point, and points live in leaves,
+ * up to a bucket of them per leaf, with their coordinates in a primitive array
+ * A leaf that overflows splits into four quarters and hands its points down. Splits are half-open (a point on a
+ * midline goes right and/or down), so every point is in exactly one leaf. Depth is bounded by MAX_DEPTH no matter
+ * how the points are spread: a leaf at MAX_DEPTH, or one whose points all share a position, grows its bucket instead
+ * of splitting, so duplicate and near-duplicate points cannot build the deep chains PointQuadtree does
+ * Nodes are stored as parallel arrays, like FlatPointQuadtree, and regions are recomputed during traversal
+ *
+ * @param <E>	type of the points stored
+ */
+public class BucketQuadtree<E extends Point2D> {
+	public static final int DEFAULT_BUCKET_SIZE = 16;
+	public static final int MAX_DEPTH = 32;					// a region is at most 2^-32 of the tree's width or height
+
+	private final int x1, y1, x2, y2;						// region of the whole tree (edges included)
+	private final int bucketSize;							// points a leaf holds before it splits
+	private int[] firstChild;								// node number of each node's quadrant 1 child (the other 3 follow), -1 for a leaf
+	private int[] counts;									// number of points in each leaf's bucket
+	private double[][] coordinates;							// each leaf's points' x and y, interleaved; null for other nodes
+	private Object[][] buckets;								// each leaf's points (all E); null for other nodes
+	private int nodeCount;									// number of nodes in use
+	private int size;										// number of points
+
+	/**
+	 * Initializes an empty tree over the rectangle, with buckets of DEFAULT_BUCKET_SIZE points
+	 */
+	public BucketQuadtree(int x1, int y1, int x2, int y2) {
+		this(x1, y1, x2, y2, DEFAULT_BUCKET_SIZE);
+	}
+
+	/**
+	 * Initializes an empty tree over the rectangle, where a leaf splits once it has more than bucketSize points
+	 */
+	public BucketQuadtree(int x1, int y1, int x2, int y2, int bucketSize) {
+		if (bucketSize < 1) {
+			throw new IllegalArgumentException("Bucket size must be positive: " + bucketSize);
+		}
+		this.x1 = x1; this.y1 = y1; this.x2 = x2; this.y2 = y2;
+		this.bucketSize = bucketSize;
+		firstChild = new int[16];
+		counts = new int[16];
+		coordinates = new double[16][];
+		buckets = new Object[16][];
+		addLeaf();
+	}
+
+	// Getters
+
+	public int getX1() {
+		return x1;
+	}
+
+	public int getY1() {
+		return y1;
+	}
+
+	public int getX2() {
+		return x2;
+	}
+
+	public int getY2() {
+		return y2;
+	}
+
+	// appends an empty leaf and returns its number
+	private int addLeaf() {
+		if (nodeCount == firstChild.length) {
+			int capacity = nodeCount * 2;
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+			coordinates = Arrays.copyOf(coordinates, capacity);
+			buckets = Arrays.copyOf(buckets, capacity);
+		}
+		firstChild[nodeCount] = -1;						// its bucket is allocated by the first append
+		return nodeCount++;
+	}
+
+	/**
+	 * Inserts the point into the tree
+	 * @return	false (and the tree is unchanged) if the point is outside the tree's rectangle
+	 */
+	public boolean insert(E p2) {
+		double x = p2.getX(), y = p2.getY();
+		if (!(x1 <= x && x <= x2 && y1 <= y && y <= y2)) return false;
+		double rx1 = x1, ry1 = y1, rx2 = x2, ry2 = y2;
+		int node = 0;
+		for (int depth = 0; ; depth++) {
+			if (firstChild[node] < 0) {
+				if (counts[node] < bucketSize || depth == MAX_DEPTH || allAt(node, x, y)) {
+					append(node, p2, x, y);
+					size++;
+					return true;
+				}
+				split(node, rx1, ry1, rx2, ry2);
+			}
+			double mx = (rx1 + rx2) / 2, my = (ry1 + ry2) / 2;
+			int quadrant = quadrant(x, y, mx, my);
+			if (quadrant == 1 || quadrant == 4) rx1 = mx; else rx2 = mx;
+			if (quadrant == 1 || quadrant == 2) ry2 = my; else ry1 = my;
+			node = firstChild[node] + quadrant - 1;
+		}
+	}
+
+	// the quadrant, 1-4, holding (x, y) in a region split at (mx, my); midlines belong to the right and lower quadrants
+	private static int quadrant(double x, double y, double mx, double my) {
+		if (y < my) return x < mx ? 2 : 1;
+		return x < mx ? 3 : 4;
+	}
+
+	// whether every point in the leaf is at (x, y), so splitting could never separate them
+	// (a leaf shallower than MAX_DEPTH only grew past bucketSize because its points coincide, so then the first one tells)
+	private boolean allAt(int leaf, double x, double y) {
+		double[] xy = coordinates[leaf];
+		int check = counts[leaf] > bucketSize ? 1 : counts[leaf];
+		for (int i = 0; i < check; i++) {
+			if (xy[2 * i] != x || xy[2 * i + 1] != y) return false;
+		}
+		return true;
+	}
+
+	// adds the point to the leaf's bucket, growing it if needed (only past MAX_DEPTH or for duplicates)
+	private void append(int leaf, Object point, double x, double y) {
+		int count = counts[leaf];
+		if (buckets[leaf] == null) {
+			buckets[leaf] = new Object[bucketSize];
+			coordinates[leaf] = new double[2 * bucketSize];
+		}
+		else if (count == buckets[leaf].length) {
+			buckets[leaf] = Arrays.copyOf(buckets[leaf], 2 * count);
+			coordinates[leaf] = Arrays.copyOf(coordinates[leaf], 4 * count);
+		}
+		buckets[leaf][count] = point;
+		coordinates[leaf][2 * count] = x;
+		coordinates[leaf][2 * count + 1] = y;
+		counts[leaf] = count + 1;
+	}
+
+	// turns the full leaf (with the given region) into a node with four leaves, and moves its points down into them
+	private void split(int leaf, double rx1, double ry1, double rx2, double ry2) {
+		int first = addLeaf();
+		addLeaf(); addLeaf(); addLeaf();
+		double[] xy = coordinates[leaf];
+		Object[] points = buckets[leaf];
+		double mx = (rx1 + rx2) / 2, my = (ry1 + ry2) / 2;
+		for (int i = 0; i < counts[leaf]; i++) {
+			double x = xy[2 * i], y = xy[2 * i + 1];
+			append(first + quadrant(x, y, mx, my) - 1, points[i], x, y);
+		}
+		firstChild[leaf] = first;
+		counts[leaf] = 0;
+		coordinates[leaf] = null;
+		buckets[leaf] = null;
+	}
+
+	/**
+	 * Finds the number of points in the quadtree
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Builds a list of all the points in the quadtree, leaf by leaf, each leaf's points in the order they were inserted
+	 */
+	@SuppressWarnings("unchecked")
+	public List<E> allPoints() {
+		List<E> result = new ArrayList<E>(size);
+		int[] stack = new int[4 * MAX_DEPTH + 4];			// at most 3 siblings wait per level
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int node = stack[--top];
+			if (firstChild[node] >= 0) {
+				for (int q = 3; q >= 0; q--) stack[top++] = firstChild[node] + q;	// push 4 to 1 so children are visited 1 to 4
+				continue;
+			}
+			Object[] points = buckets[node];
+			for (int i = 0; i < counts[node]; i++) result.add((E) points[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Uses the quadtree to find all points within the circle
+	 * @param cx	circle center x
+	 * @param cy  	circle center y
+	 * @param cr  	circle radius
+	 * @return    	the points in the circle, in the same order as allPoints
+	 */
+	public List<E> findInCircle(double cx, double cy, double cr) {
+		List<E> hits = new ArrayList<E>();
+		findInCircle(cx, cy, cr, hits::add, Integer.MAX_VALUE);
+		return hits;
+	}
+
+	/**
+	 * Counts the points within the circle, without building a list
+	 */
+	public int countInCircle(double cx, double cy, double cr) {
+		return findInCircle(cx, cy, cr, p -> {}, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Passes the points within the circle to the action, in the same order as findInCircle, stopping after maxHits
+	 * A leaf's points are tested straight from its coordinate array; the points themselves are only read for hits
+	 * @return		the number of points passed, at most maxHits
+	 */
+	@SuppressWarnings("unchecked")
+	public int findInCircle(double cx, double cy, double cr, Consumer<? super E> action, int maxHits) {
+		int hits = 0;
+		if (maxHits <= 0) return 0;
+		int[] nodes = new int[4 * MAX_DEPTH + 4];			// nodes waiting, with their regions alongside
+		double[] regions = new double[4 * nodes.length];
+		int top = 0;
+		nodes[0] = 0;
+		regions[0] = x1; regions[1] = y1; regions[2] = x2; regions[3] = y2;
+		top++;
+		while (top > 0) {
+			top--;
+			int node = nodes[top];
+			double rx1 = regions[4 * top], ry1 = regions[4 * top + 1], rx2 = regions[4 * top + 2], ry2 = regions[4 * top + 3];
+			if (!Geometry.circleIntersectsRectangle(cx, cy, cr, rx1, ry1, rx2, ry2)) continue;
+			if (firstChild[node] >= 0) {
+				double mx = (rx1 + rx2) / 2, my = (ry1 + ry2) / 2;
+				for (int q = 4; q >= 1; q--) {				// push 4 to 1 so children are visited 1 to 4
+					nodes[top] = firstChild[node] + q - 1;
+					regions[4 * top] = (q == 1 || q == 4) ? mx : rx1;
+					regions[4 * top + 1] = (q == 1 || q == 2) ? ry1 : my;
+					regions[4 * top + 2] = (q == 1 || q == 4) ? rx2 : mx;
+					regions[4 * top + 3] = (q == 1 || q == 2) ? my : ry2;
+					top++;
+				}
+				continue;
+			}
+			double[] xy = coordinates[node];
+			for (int i = 0; i < counts[node]; i++) {
+				if (Geometry.pointInCircle(xy[2 * i], xy[2 * i + 1], cx, cy, cr)) {
+					action.accept((E) buckets[node][i]);
+					if (++hits == maxHits) return hits;
+				}
+			}
+		}
+		return hits;
+	}
+}
@@ -0,0 +1,182 @@
+import java.io.*;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Canonical Huffman code: the code of every symbol follows from the code lengths alone,
+ * so only the lengths need to be stored to rebuild the code in another process
+ * Symbols are kept sorted by (length, symbol); codes are handed out in that order
+ */
+public class CanonicalCode {
+    private final char[] symbols;       // sorted by length, then by symbol
+    private final int[] lengths;        // code length of each symbol
+    private final long[] codes;         // code bits of each symbol, right-aligned
+
+    /**
+     * Builds the canonical code for the given code lengths
+     * A lone symbol has length 0 (it takes no bits, just like its Huffman tree leaf); otherwise lengths are 1 through HuffmanDecoder.MAX_CODE_LENGTH
+     * @throws IllegalArgumentException if the lengths do not describe a prefix code
+     */
+    public CanonicalCode(char[] symbols, int[] lengths) {
+        int n = symbols.length;
+        long[] keys = new long[n];
+        BitSet seen = new BitSet(Character.MAX_VALUE + 1);
+        for (int i = 0; i < n; i++) {
+            if (seen.get(symbols[i])) {
+                throw new IllegalArgumentException("Symbol '" + symbols[i] + "' appears twice");
+            }
+            seen.set(symbols[i]);
+            int length = lengths[i];
+            if (n == 1 ? length != 0 : length < 1 || length > HuffmanDecoder.MAX_CODE_LENGTH) {
+                throw new IllegalArgumentException("Invalid code length " + length + " for '" + symbols[i] + "'");
+            }
+            keys[i] = ((long) length << 16) | symbols[i];                           // sort by length, then symbol, without boxing
+        }
+        Arrays.sort(keys);
+
+        this.symbols = new char[n];
+        this.lengths = new int[n];
+        this.codes = new long[n];
+        long code = 0;
+        int previous = 0;
+        for (int i = 0; i < n; i++) {
+            int length = (int) (keys[i] >>> 16);
+            code <<= length - previous;                                             // next code is one past the previous one, extended to the new length
+            if (length > 0 && code >>> length != 0) {
+                throw new IllegalArgumentException("Code lengths do not describe a prefix code");
+            }
+            this.symbols[i] = (char) keys[i];
+            this.lengths[i] = length;
+            this.codes[i] = code;
+            code++;
+            previous = length;
+        }
+    }
+
+    /**
+     * Builds the canonical code with the same code lengths as the given code map (e.g., from CodeRetrieval)
+     */
+    public static CanonicalCode fromCodeMap(Map<Character, String> CodeMap) {
+        char[] symbols = new char[CodeMap.size()];
+        int[] lengths = new int[CodeMap.size()];
+        int i = 0;
+        for (Map.Entry<Character, String> entry : CodeMap.entrySet()) {
+            symbols[i] = entry.getKey();
+            lengths[i] = entry.getValue().length();
+            i++;
+        }
+        return new CanonicalCode(symbols, lengths);
+    }
+
+    /**
+     * Builds the canonical code for a histogram indexed by symbol (e.g., ByteFrequencies), with no code longer than maxLength
+     * Code lengths come from CodeLengths, without building a Huffman tree
+     */
+    public static CanonicalCode fromFrequencies(long[] histogram, int maxLength) {
+        if (histogram.length > Character.MAX_VALUE + 1) {
+            throw new IllegalArgumentException("Symbols must be chars: histogram has " + histogram.length + " entries");
+        }
+        int[] all = CodeLengths.build(histogram, maxLength);
+        int n = 0;
+        for (long count : histogram) if (count > 0) n++;
+        char[] symbols = new char[n];
+        int[] lengths = new int[n];
+        n = 0;
+        for (int c = 0; c < histogram.length; c++) {
+            if (histogram[c] > 0) {
+                symbols[n] = (char) c;
+                lengths[n++] = all[c];
+            }
+        }
+        return new CanonicalCode(symbols, lengths);
+    }
+
+    /**
+     * Builds the canonical code for character counts (e.g., CharFrequencies), with no code longer than maxLength
+     */
+    public static CanonicalCode fromCounts(SymbolCounts counts, int maxLength) {
+        int[] symbols = counts.symbols();
+        long[] frequencies = new long[symbols.length];
+        for (int i = 0; i < symbols.length; i++) frequencies[i] = counts.get(symbols[i]);
+        int[] lengths = CodeLengths.build(frequencies, maxLength);
+        char[] chars = new char[symbols.length];
+        for (int i = 0; i < symbols.length; i++) chars[i] = (char) symbols[i];
+        return new CanonicalCode(chars, lengths);
+    }
+
+    // Getters
+
+    public int size() {
+        return symbols.length;
+    }
+
+    public char getSymbol(int i) {
+        return symbols[i];
+    }
+
+    public int getLength(int i) {
+        return lengths[i];
+    }
+
+    public long getCode(int i) {
+        return codes[i];
+    }
+
+    /**
+     * Returns a map of each character to its code as a string of 0's and 1's, like CodeRetrieval
+     */
+    public Map<Character, String> toCodeMap() {
+        Map<Character, String> CodeMap = new TreeMap<Character, String>();
+        for (int i = 0; i < symbols.length; i++) {
+            StringBuilder bits = new StringBuilder(lengths[i]);
+            for (int b = lengths[i] - 1; b >= 0; b--) {
+                bits.append((codes[i] >>> b & 1) == 1 ? '1' : '0');
+            }
+            CodeMap.put(symbols[i], bits.toString());
+        }
+        return CodeMap;
+    }
+
+    /**
+     * Returns a table-driven decoder for this code (needs at least two symbols)
+     */
+    public HuffmanDecoder decoder() {
+        return new HuffmanDecoder(symbols, codes, lengths);
+    }
+
+    /**
+     * Writes the code lengths: number of symbols, then each symbol (2 bytes) with its length (1 byte)
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(symbols.length);
+        for (int i = 0; i < symbols.length; i++) {
+            out.writeChar(symbols[i]);
+            out.writeByte(lengths[i]);
+        }
+    }
+
+    /**
+     * Reads code lengths written by write() and rebuilds the code
+     * @throws IOException if the stream ends early or does not hold a valid code
+     */
+    public static CanonicalCode read(DataInput in) throws IOException {
+        int n = in.readInt();
+        if (n < 0 || n > Character.MAX_VALUE + 1) {
+            throw new IOException("Invalid number of symbols in code table: " + n);
+        }
+        char[] symbols = new char[n];
+        int[] lengths = new int[n];
+        for (int i = 0; i < n; i++) {
+            symbols[i] = in.readChar();
+            lengths[i] = in.readUnsignedByte();
+        }
+        try {
+            return new CanonicalCode(symbols, lengths);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("Invalid code table: " + e.getMessage());
+        }
+    }
+}
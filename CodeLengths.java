@@ -0,0 +1,157 @@
+import java.util.Arrays;
+
+/**
+ * Computes Huffman code lengths straight from symbol frequencies, without building a tree of objects
+ * Frequencies are sorted once; optimal lengths then come from Moffat and Katajainen's in-place linear-time algorithm,
+ * and if the longest code is over the limit, package-merge finds the optimal lengths that respect it
+ */
+public class CodeLengths {
+    public static final int DEFAULT_MAX_LENGTH = HuffmanDecoder.PRIMARY_BITS + HuffmanDecoder.SECONDARY_BITS;     // every code decodes in at most two lookups
+    private static final int INDEX_BITS = 20;                                   // symbols are sorted by frequency << INDEX_BITS | index
+    private static final long MAX_FREQUENCY = (1L << (63 - INDEX_BITS)) - 1;
+    private static final long MAX_TOTAL = 1L << 56;                             // package weights can add up each frequency once per level
+
+    /**
+     * Returns the code length of every symbol, given its frequency; symbols with frequency 0 get length 0
+     * A lone symbol also gets length 0 (it needs no bits); otherwise lengths are 1 through maxLength
+     * @param frequencies   frequency of each symbol
+     * @param maxLength     longest code allowed
+     * @throws IllegalArgumentException if there are more symbols than codes of maxLength bits can tell apart
+     */
+    public static int[] build(long[] frequencies, int maxLength) {
+        if (frequencies.length > 1 << INDEX_BITS) {
+            throw new IllegalArgumentException("At most " + (1 << INDEX_BITS) + " symbols are supported");
+        }
+        int n = 0;
+        long total = 0;
+        for (long frequency : frequencies) {
+            if (frequency < 0 || frequency > MAX_FREQUENCY) {
+                throw new IllegalArgumentException("Frequency out of range: " + frequency);
+            }
+            if (frequency > 0) n++;
+            total += frequency;
+            if (total > MAX_TOTAL) {
+                throw new IllegalArgumentException("Frequencies add up to more than " + MAX_TOTAL);
+            }
+        }
+        if (n > 1 && (maxLength < 1 || maxLength > 62 || n > 1L << maxLength)) {
+            throw new IllegalArgumentException(n + " symbols do not fit in codes of at most " + maxLength + " bits");
+        }
+
+        long[] sorted = new long[n];                                            // ascending by frequency, index in the low bits
+        int k = 0;
+        for (int i = 0; i < frequencies.length; i++) {
+            if (frequencies[i] > 0) sorted[k++] = frequencies[i] << INDEX_BITS | i;
+        }
+        Arrays.sort(sorted);
+
+        int[] lengths = new int[frequencies.length];
+        if (n < 2) return lengths;
+
+        long[] weights = new long[n];
+        for (int i = 0; i < n; i++) weights[i] = sorted[i] >>> INDEX_BITS;
+        long[] a = weights.clone();
+        minimumRedundancy(a);
+        if (a[0] > maxLength) {                                                 // a[0] is the longest code
+            a = packageMerge(weights, maxLength);
+        }
+        for (int i = 0; i < n; i++) {
+            lengths[(int) (sorted[i] & ((1 << INDEX_BITS) - 1))] = (int) a[i];
+        }
+        return lengths;
+    }
+
+    /**
+     * Replaces ascending weights (at least two) with their optimal code lengths, in place and in linear time
+     * (Moffat and Katajainen, "In-place calculation of minimum-redundancy codes")
+     */
+    static void minimumRedundancy(long[] a) {
+        int n = a.length;
+        // phase 1: two-queue merge, leaving each internal node's weight and then its parent's index
+        a[0] += a[1];
+        int root = 0, leaf = 2;
+        for (int next = 1; next < n - 1; next++) {
+            if (leaf >= n || a[root] < a[leaf]) {
+                a[next] = a[root];
+                a[root++] = next;
+            }
+            else {
+                a[next] = a[leaf++];
+            }
+            if (leaf >= n || (root < next && a[root] < a[leaf])) {
+                a[next] += a[root];
+                a[root++] = next;
+            }
+            else {
+                a[next] += a[leaf++];
+            }
+        }
+        // phase 2: depth of each internal node, from the root down
+        a[n - 2] = 0;
+        for (int next = n - 3; next >= 0; next--) {
+            a[next] = a[(int) a[next]] + 1;
+        }
+        // phase 3: depth of each leaf from the number of internal nodes at each depth
+        int available = 1, used = 0, depth = 0;
+        root = n - 2;
+        int next = n - 1;
+        while (available > 0) {
+            while (root >= 0 && a[root] == depth) {
+                used++;
+                root--;
+            }
+            while (available > used) {
+                a[next--] = depth;
+                available--;
+            }
+            available = 2 * used;
+            depth++;
+            used = 0;
+        }
+    }
+
+    /**
+     * Returns optimal code lengths no longer than maxLength for ascending weights, by package-merge (same order as the weights)
+     * Each level's list is the leaves merged with pairs ("packages") of the deeper level's list;
+     * only which positions hold leaves is kept, since the chosen items always form a prefix of each list
+     */
+    static long[] packageMerge(long[] weights, int maxLength) {
+        int n = weights.length;
+        boolean[][] isLeaf = new boolean[maxLength][];                          // per level, whether each position of its list is a leaf
+        long[] list = weights.clone();                                          // deepest level: just the leaves
+        isLeaf[maxLength - 1] = new boolean[n];
+        Arrays.fill(isLeaf[maxLength - 1], true);
+
+        for (int level = maxLength - 2; level >= 0; level--) {
+            int packages = list.length / 2;
+            long[] merged = new long[n + packages];
+            boolean[] leaves = new boolean[n + packages];
+            int i = 0, j = 0;
+            for (int m = 0; m < merged.length; m++) {
+                long packaged = j < packages ? list[2 * j] + list[2 * j + 1] : Long.MAX_VALUE;
+                if (i < n && weights[i] <= packaged) {
+                    merged[m] = weights[i++];
+                    leaves[m] = true;
+                }
+                else {
+                    merged[m] = packaged;
+                    j++;
+                }
+            }
+            list = merged;
+            isLeaf[level] = leaves;
+        }
+
+        long[] lengths = new long[n];
+        int chosen = 2 * n - 2;                                                 // items taken from the shallowest list
+        for (int level = 0; level < maxLength && chosen > 0; level++) {
+            int leaves = 0;
+            for (int m = 0; m < chosen; m++) {
+                if (isLeaf[level][m]) leaves++;
+            }
+            for (int i = 0; i < leaves; i++) lengths[i]++;                      // the chosen leaves are always the lightest ones
+            chosen = 2 * (chosen - leaves);                                     // each chosen package pulls in two items of the next level
+        }
+        return lengths;
+    }
+}
@@ -0,0 +1,227 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * A point quadtree with the same behavior as PointQuadtree that any number of threads can query while others insert
+ * Nodes never change once linked in, except to gain children; each child slot is volatile and is filled by
+ * compare-and-set, so inserts take no locks (two inserts racing for a slot: one wins, the other goes on below it)
+ * and queries take no locks and never block or retry
+ * A query sees every insert that finished before it started; inserts running during the query may or may not be seen
+ * A point at exactly an anchor's position, which PointQuadtree keeps in the anchor's node, gets its own node here,
+ * chained right after the anchor's through a fifth slot (so the latest comes first)
+ *
+ * @param <E>	type of the points stored
+ */
+public class ConcurrentPointQuadtree<E extends Point2D> {
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<ConcurrentPointQuadtree, ConcurrentPointQuadtree>
+			C1 = AtomicReferenceFieldUpdater.newUpdater(ConcurrentPointQuadtree.class, ConcurrentPointQuadtree.class, "c1"),
+			C2 = AtomicReferenceFieldUpdater.newUpdater(ConcurrentPointQuadtree.class, ConcurrentPointQuadtree.class, "c2"),
+			C3 = AtomicReferenceFieldUpdater.newUpdater(ConcurrentPointQuadtree.class, ConcurrentPointQuadtree.class, "c3"),
+			C4 = AtomicReferenceFieldUpdater.newUpdater(ConcurrentPointQuadtree.class, ConcurrentPointQuadtree.class, "c4"),
+			SAME = AtomicReferenceFieldUpdater.newUpdater(ConcurrentPointQuadtree.class, ConcurrentPointQuadtree.class, "same");
+
+	private final E point;										// the point anchoring this node
+	private final double px, py;								// its coordinates, read once
+	private final int x1, y1;									// upper-left corner of the region
+	private final int x2, y2;									// lower-right corner of the region
+	private volatile ConcurrentPointQuadtree<E> c1, c2, c3, c4;	// children, set at most once each
+	private volatile ConcurrentPointQuadtree<E> same;			// the node holding the next point at this one's position; a new one links to the old
+
+	/**
+	 * Initializes a leaf quadtree, holding the point in the rectangle
+	 */
+	public ConcurrentPointQuadtree(E point, int x1, int y1, int x2, int y2) {
+		this.point = point;
+		this.px = point.getX(); this.py = point.getY();
+		this.x1 = x1; this.y1 = y1; this.x2 = x2; this.y2 = y2;
+	}
+
+	// Getters
+
+	public E getPoint() {
+		return point;
+	}
+
+	public int getX1() {
+		return x1;
+	}
+
+	public int getY1() {
+		return y1;
+	}
+
+	public int getX2() {
+		return x2;
+	}
+
+	public int getY2() {
+		return y2;
+	}
+
+	/**
+	 * Returns the child (if any) at the given quadrant, 1-4
+	 * @param quadrant	1 through 4
+	 */
+	public ConcurrentPointQuadtree<E> getChild(int quadrant) {
+		if (quadrant==1) return c1;
+		if (quadrant==2) return c2;
+		if (quadrant==3) return c3;
+		if (quadrant==4) return c4;
+		return null;
+	}
+
+	/**
+	 * Returns whether or not there is a child at the given quadrant, 1-4
+	 * @param quadrant	1 through 4
+	 */
+	public boolean hasChild(int quadrant) {
+		return getChild(quadrant) != null;
+	}
+
+	/**
+	 * Returns the node holding the next point at exactly this node's position, if any
+	 */
+	public ConcurrentPointQuadtree<E> getSame() {
+		return same;
+	}
+
+	/**
+	 * Inserts the point into the tree, following the same quadrant rules as PointQuadtree.insert
+	 * (a point at exactly an anchor's position is chained right after the anchor's node)
+	 * Safe to call from any number of threads at once, and alongside queries
+	 */
+	public void insert(E p2) {
+		double x = p2.getX(), y = p2.getY();
+		if (x < x1 || x > x2 || y < y1 || y > y2) return;
+		ConcurrentPointQuadtree<E> node = this;
+		while (node != null) {
+			int quadrant = 0;									// 0 for the same position
+			if (x != node.px || y != node.py) {
+				boolean right = x > node.px || (x == node.px && y > node.py);		// as in PointQuadtree.quadrant
+				boolean lower = y > node.py || (y == node.py && x > node.px);
+				quadrant = right ? (lower ? 4 : 1) : (lower ? 3 : 2);
+			}
+			node = node.link(quadrant, p2);
+		}
+	}
+
+	/**
+	 * Puts a new node for p2 in the given (empty) quadrant, or at the head of the same chain for quadrant 0
+	 * @return	null if it went in, or the node already there (possibly just put there by another thread) to go on into
+	 */
+	@SuppressWarnings("unchecked")
+	private ConcurrentPointQuadtree<E> link(int quadrant, E p2) {
+		if (quadrant == 0) {
+			ConcurrentPointQuadtree<E> leaf = new ConcurrentPointQuadtree<E>(p2, x1, y1, x2, y2);
+			do {
+				leaf.same = same;								// published by the compare-and-set, so queries see the whole chain
+			} while (!SAME.compareAndSet(this, leaf.same, leaf));
+			return null;
+		}
+		ConcurrentPointQuadtree<E> child = getChild(quadrant);
+		if (child != null) return child;
+		int floorX = (int) Math.floor(px), floorY = (int) Math.floor(py), ceilX = (int) Math.ceil(px), ceilY = (int) Math.ceil(py);
+		ConcurrentPointQuadtree<E> leaf = new ConcurrentPointQuadtree<E>(p2,		// cut at the anchor, rounded outward as in PointQuadtree
+				(quadrant == 1 || quadrant == 4) ? floorX : x1, (quadrant == 1 || quadrant == 2) ? y1 : floorY,
+				(quadrant == 1 || quadrant == 4) ? x2 : ceilX, (quadrant == 1 || quadrant == 2) ? ceilY : y2);
+		if (slot(quadrant).compareAndSet(this, null, leaf)) return null;
+		return getChild(quadrant);								// lost the race: descend into the winner
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static AtomicReferenceFieldUpdater<ConcurrentPointQuadtree, ConcurrentPointQuadtree> slot(int quadrant) {
+		return quadrant == 0 ? SAME : quadrant == 1 ? C1 : quadrant == 2 ? C2 : quadrant == 3 ? C3 : C4;
+	}
+
+	/**
+	 * Finds the number of points in the quadtree (as of some moment during the call)
+	 */
+	public int size() {
+		int[] count = new int[1];
+		allPoints(p -> count[0]++);
+		return count[0];
+	}
+
+	/**
+	 * Builds a list of all the points in the quadtree, in the same order as PointQuadtree.allPoints
+	 */
+	public List<E> allPoints() {
+		List<E> points = new ArrayList<E>();
+		allPoints(points::add);
+		return points;
+	}
+
+	/**
+	 * Passes every point in the quadtree to the action, in the same order as allPoints
+	 * Each node comes after its children 1-4, read once each, so a child linked in mid-walk is either fully seen or not at all
+	 */
+	@SuppressWarnings("unchecked")
+	public void allPoints(Consumer<? super E> action) {
+		Object[] stack = new Object[64];						// nodes, each followed by null once its children are pushed
+		int top = 0;
+		stack[top++] = this;
+		while (top > 0) {
+			Object item = stack[--top];
+			if (item == null) {
+				for (ConcurrentPointQuadtree<E> node = (ConcurrentPointQuadtree<E>) stack[--top]; node != null; node = node.same) action.accept(node.point);
+				continue;
+			}
+			ConcurrentPointQuadtree<E> node = (ConcurrentPointQuadtree<E>) item;
+			if (top + 6 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+			stack[top++] = node;
+			stack[top++] = null;
+			top = pushChildren(node, stack, top);
+		}
+	}
+
+	/**
+	 * Uses the quadtree to find all points within the circle, in the same order as PointQuadtree.findInCircle
+	 * @param cx	circle center x
+	 * @param cy  	circle center y
+	 * @param cr  	circle radius
+	 * @return    	the points in the circle (and the qt's rectangle)
+	 */
+	public List<E> findInCircle(double cx, double cy, double cr) {
+		List<E> hits = new ArrayList<E>();
+		findInCircle(cx, cy, cr, hits::add, Integer.MAX_VALUE);
+		return hits;
+	}
+
+	/**
+	 * Passes the points within the circle to the action, in the same order as findInCircle, stopping after maxHits
+	 * @return		the number of points passed, at most maxHits
+	 */
+	@SuppressWarnings("unchecked")
+	public int findInCircle(double cx, double cy, double cr, Consumer<? super E> action, int maxHits) {
+		int hits = 0;
+		if (maxHits <= 0) return 0;
+		Object[] stack = new Object[64];
+		int top = 0;
+		stack[top++] = this;
+		while (top > 0) {
+			ConcurrentPointQuadtree<E> node = (ConcurrentPointQuadtree<E>) stack[--top];
+			if (!Geometry.circleIntersectsRectangle(cx, cy, cr, node.x1, node.y1, node.x2, node.y2)) continue;
+			if (Geometry.pointInCircle(node.px, node.py, cx, cy, cr)) {
+				for (ConcurrentPointQuadtree<E> held = node; held != null && hits < maxHits; held = held.same, hits++) action.accept(held.point);
+				if (hits == maxHits) break;
+			}
+			if (top + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+			top = pushChildren(node, stack, top);
+		}
+		return hits;
+	}
+
+	// pushes node's children 4 to 1, so they come off 1 to 4; reads each volatile slot once
+	private static int pushChildren(ConcurrentPointQuadtree<?> node, Object[] stack, int top) {
+		ConcurrentPointQuadtree<?> child;
+		if ((child = node.c4) != null) stack[top++] = child;
+		if ((child = node.c3) != null) stack[top++] = child;
+		if ((child = node.c2) != null) stack[top++] = child;
+		if ((child = node.c1) != null) stack[top++] = child;
+		return top;
+	}
+}
@@ -0,0 +1,158 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Table-driven Huffman decoder
+ * Instead of following one tree pointer per bit, looks up PRIMARY_BITS bits at a time in a primary table;
+ * codes longer than that continue into SECONDARY_BITS-wide subtables stored in the same array
+ * Each step emits a whole symbol
+ */
+public class HuffmanDecoder {
+    public static final int PRIMARY_BITS = 10;                  // bits resolved by the first lookup
+    public static final int SECONDARY_BITS = 6;                 // bits resolved by each further lookup
+    public static final int MAX_CODE_LENGTH = 56;               // longest code the 64-bit bit buffer can hold after a refill
+    private static final int LINK = 0x80;                       // entry flag: entry points at a subtable instead of a symbol
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final int[] table;      // primary table followed by all subtables; entry = (symbol or subtable offset) << 8 | flag | bits
+    private final int rootBits;     // width of the primary table
+
+    /**
+     * Builds the lookup tables from parallel arrays describing every code (see CanonicalCode)
+     * @param symbols   character of each code
+     * @param codes     code bits, right-aligned, first bit most significant
+     * @param lengths   number of bits in each code, 1 through MAX_CODE_LENGTH
+     */
+    public HuffmanDecoder(char[] symbols, long[] codes, int[] lengths) {
+        int maxLength = 1;
+        for (int length : lengths) {
+            if (length < 1 || length > MAX_CODE_LENGTH) {
+                throw new IllegalArgumentException("Code length " + length + " is out of range 1-" + MAX_CODE_LENGTH);
+            }
+            maxLength = Math.max(maxLength, length);
+        }
+        rootBits = Math.min(PRIMARY_BITS, maxLength);
+
+        int[] t = new int[1 << rootBits];
+        int used = 1 << rootBits;
+        for (int i = 0; i < symbols.length; i++) {
+            int base = 0, width = rootBits, left = lengths[i];
+            while (left > width) {                                                  // descend (creating subtables as needed) until the rest of the code fits
+                int index = (int) (codes[i] >>> (left - width)) & ((1 << width) - 1);
+                int entry = t[base + index];
+                if ((entry & LINK) == 0) {
+                    if (used + (1 << SECONDARY_BITS) > t.length) {
+                        t = Arrays.copyOf(t, Math.max(t.length * 2, used + (1 << SECONDARY_BITS)));
+                    }
+                    entry = (used << 8) | LINK | SECONDARY_BITS;
+                    t[base + index] = entry;
+                    used += 1 << SECONDARY_BITS;
+                }
+                left -= width;
+                base = entry >>> 8;
+                width = entry & 0x7F;
+            }
+            int first = (int) (codes[i] & ((1L << left) - 1)) << (width - left);    // every index starting with the rest of the code decodes to this symbol
+            int entry = (symbols[i] << 8) | left;
+            for (int j = 0; j < 1 << (width - left); j++) {
+                t[base + first + j] = entry;
+            }
+        }
+        table = Arrays.copyOf(t, used);
+    }
+
+    /**
+     * Decodes symbolCount characters from a bit stream packed most significant bit first (the last byte padded with 0's)
+     * Characters are written to out in blocks; neither stream is closed
+     * @throws EOFException if the stream ends before symbolCount characters have been decoded
+     */
+    public void decode(InputStream in, Writer out, long symbolCount) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        char[] chars = new char[BUFFER_SIZE];
+        int pos = 0, limit = 0, count = 0;
+        boolean eof = false;
+        long acc = 0;           // bit buffer, most recent bits at the bottom
+        int n = 0;              // number of valid bits in acc
+
+        for (long remaining = symbolCount; remaining > 0; remaining--) {
+            while (n <= MAX_CODE_LENGTH && !eof) {                                      // top up the bit buffer a byte at a time
+                if (pos < limit) {
+                    acc = (acc << 8) | (buf[pos++] & 0xFF);
+                    n += 8;
+                }
+                else {
+                    int read = in.read(buf, 0, buf.length);
+                    if (read < 0) eof = true;
+                    pos = 0;
+                    limit = Math.max(read, 0);
+                }
+            }
+
+            int base = 0, width = rootBits, entry;
+            while (true) {
+                int index = (int) (n >= width ? acc >>> (n - width) : acc << (width - n)) & ((1 << width) - 1);
+                entry = table[base + index];
+                if ((entry & LINK) == 0) break;
+                n -= width;                                                             // resolved this level's bits, continue in the subtable
+                base = entry >>> 8;
+                width = entry & 0x7F;
+            }
+            int length = entry & 0x7F;
+            if (length == 0) {
+                throw new IOException("Compressed data contains a bit sequence that is not a code");
+            }
+            if (n < length) {
+                throw new EOFException("Compressed data ended " + remaining + " characters early");
+            }
+            n -= length;
+            chars[count++] = (char) (entry >>> 8);
+            if (count == chars.length) {
+                out.write(chars, 0, count);
+                count = 0;
+            }
+        }
+        out.write(chars, 0, count);
+    }
+
+    /**
+     * Decodes count symbols from the packed bits between in's position and limit, putting one byte per symbol into out at its position
+     * For codes over byte values (see BlockHuffman); works on heap, direct and memory-mapped buffers alike
+     * Both positions advance: in's past the bytes the bits were taken from, out's past the symbols
+     * @throws EOFException if the bits run out before count symbols have been decoded
+     */
+    public void decode(ByteBuffer in, ByteBuffer out, int count) throws IOException {
+        int pos = in.position(), to = in.limit();
+        int k = out.position(), end = k + count;
+        long acc = 0;           // bit buffer, most recent bits at the bottom
+        int n = 0;              // number of valid bits in acc
+
+        for (; k < end; k++) {
+            while (n <= MAX_CODE_LENGTH && pos < to) {
+                acc = (acc << 8) | (in.get(pos++) & 0xFF);
+                n += 8;
+            }
+
+            int base = 0, width = rootBits, entry;
+            while (true) {
+                int index = (int) (n >= width ? acc >>> (n - width) : acc << (width - n)) & ((1 << width) - 1);
+                entry = table[base + index];
+                if ((entry & LINK) == 0) break;
+                n -= width;
+                base = entry >>> 8;
+                width = entry & 0x7F;
+            }
+            int length = entry & 0x7F;
+            if (length == 0) {
+                throw new IOException("Compressed data contains a bit sequence that is not a code");
+            }
+            if (n < length) {
+                throw new EOFException("Compressed block ended " + (end - k) + " symbols early");
+            }
+            n -= length;
+            out.put(k, (byte) (entry >>> 8));
+        }
+        in.position(pos - n / 8);                                                       // give back whole bytes still in the bit buffer
+        out.position(end);
+    }
+}
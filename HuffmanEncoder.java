@@ -0,0 +1,122 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Huffman encoder that packs whole codes into a 64-bit bit buffer and writes out full bytes,
+ * instead of looking up a String per character and writing it one bit at a time
+ * Bits come out most significant first, the last byte padded with 0's (the layout HuffmanDecoder reads)
+ */
+public class HuffmanEncoder {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long ABSENT = -1;      // table entry for a character that has no code (its length byte reads 255)
+
+    private final long[] table;     // indexed by character: code << 8 | length
+    private final int maxLength;    // longest code, to know how many codes fit in the bit buffer between flushes
+
+    /**
+     * Builds the per-character code table for the given code
+     */
+    public HuffmanEncoder(CanonicalCode code) {
+        int maxSymbol = 0, longest = 0;
+        for (int i = 0; i < code.size(); i++) {
+            maxSymbol = Math.max(maxSymbol, code.getSymbol(i));
+            longest = Math.max(longest, code.getLength(i));
+        }
+        table = new long[maxSymbol + 1];
+        Arrays.fill(table, ABSENT);
+        for (int i = 0; i < code.size(); i++) {
+            table[code.getSymbol(i)] = (code.getCode(i) << 8) | code.getLength(i);
+        }
+        maxLength = longest;
+    }
+
+    /**
+     * Encodes every character from in and writes the packed bits to out; neither stream is closed
+     * @return the number of characters encoded
+     * @throws IllegalArgumentException if a character has no code
+     */
+    public long encode(Reader in, OutputStream out) throws IOException {
+        char[] chars = new char[BUFFER_SIZE];
+        byte[] buf = new byte[BUFFER_SIZE + 8];
+        int pos = 0;
+        long acc = 0;           // bit buffer, most recent bits at the bottom
+        int n = 0;              // number of bits in acc not yet written
+        int room = 64 - maxLength;      // flush once fewer bits than the longest code are free
+        long count = 0;
+
+        int read;
+        while ((read = in.read(chars)) != -1) {
+            for (int i = 0; i < read; i++) {
+                char c = chars[i];
+                long entry = c < table.length ? table[c] : ABSENT;
+                if (entry == ABSENT) {
+                    throw new IllegalArgumentException("No code for character '" + c + "'");
+                }
+                int length = (int) entry & 0xFF;
+                acc = (acc << length) | (entry >>> 8);
+                n += length;
+                if (n > room) {                                                     // move the full bytes out of the bit buffer
+                    while (n >= 8) {
+                        n -= 8;
+                        buf[pos++] = (byte) (acc >>> n);
+                    }
+                    if (pos >= BUFFER_SIZE) {
+                        out.write(buf, 0, pos);
+                        pos = 0;
+                    }
+                }
+            }
+            count += read;
+        }
+        while (n >= 8) {
+            n -= 8;
+            buf[pos++] = (byte) (acc >>> n);
+        }
+        if (n > 0) {
+            buf[pos++] = (byte) (acc << (8 - n));                                   // pad the last byte with 0's
+        }
+        out.write(buf, 0, pos);
+        return count;
+    }
+
+    /**
+     * Encodes the bytes from in's position to its limit (each byte value b is the character (char) b)
+     * and puts the packed bits into out at its position, the last byte padded with 0's; both positions advance
+     * Works on heap, direct and memory-mapped buffers alike; out must have room for all the bits
+     * (see BlockHuffman, which sizes blocks from their byte histograms)
+     * @throws IllegalArgumentException if a byte value has no code
+     */
+    public void encode(ByteBuffer in, ByteBuffer out) {
+        int pos = out.position();
+        long acc = 0;
+        int n = 0;
+        int room = 64 - maxLength;
+
+        for (int i = in.position(), end = in.limit(); i < end; i++) {
+            int b = in.get(i) & 0xFF;
+            long entry = b < table.length ? table[b] : ABSENT;
+            if (entry == ABSENT) {
+                throw new IllegalArgumentException("No code for byte " + b);
+            }
+            int length = (int) entry & 0xFF;
+            acc = (acc << length) | (entry >>> 8);
+            n += length;
+            if (n > room) {
+                while (n >= 8) {
+                    n -= 8;
+                    out.put(pos++, (byte) (acc >>> n));
+                }
+            }
+        }
+        while (n >= 8) {
+            n -= 8;
+            out.put(pos++, (byte) (acc >>> n));
+        }
+        if (n > 0) {
+            out.put(pos++, (byte) (acc << (8 - n)));
+        }
+        in.position(in.limit());
+        out.position(pos);
+    }
+}
@@ -2,41 +2,110 @@ import net.datastructures.Tree;
 
 import javax.xml.stream.events.Characters;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 public class HuffmanEncoding {
+    // compressed file layout: magic, version, character count, code table (CanonicalCode.write), then the packed bits
+    public static final int COMPRESSED_MAGIC = 0x48554646;     // "HUFF"
+    public static final int COMPRESSED_VERSION = 1;
+    private static final long COUNT_OFFSET = 5;                 // byte offset of the character count
+    private static final int BLOCK_SIZE = 1 << 16;              // characters read per call when counting
+    private static final long MAP_SEGMENT = 1L << 30;           // bytes mapped at a time when counting bytes; int counts cannot overflow within one
+    public static final Charset CHARSET = StandardCharsets.UTF_8;  // text files are read and written in it, whatever the platform default
 
     /**
      * Creates map of each character to the frequency of that character in the file
+     * Counting is done by CharFrequencies; only the distinct characters are boxed into the map
+     * Counts too large for TreeElement's int frequencies are scaled down first (see frequencyShift)
      * @param pathName is name of the file without ".txt"
      * //@throws Exception
      */
 
     public static Map<Character, Integer> FrequencyMap(String pathName) throws Exception{
         Map<Character, Integer> FrequencyMap= new TreeMap<Character, Integer>();            //create new map to hold characters and frequencies
-        BufferedReader input;                                                               // Introduce Buffered Reader input
+        SymbolCounts counts = CharFrequencies(pathName);
+        int shift = frequencyShift(counts.total(), counts.size());
+        for (int c : counts.symbols()) {
+            FrequencyMap.put((char) c, scaled(counts.get(c), shift));                           // copy each distinct character and its frequency into the map
+        }
+        return FrequencyMap;                                                                // return the map
+    }
+
+    /**
+     * Counts each character of the file into primitive counts, reading blocks of characters at a time
+     * Handles every char of the text (full Unicode, decoded from CHARSET into UTF-16 chars like FrequencyMap)
+     * @param pathName is name of the file without ".txt"
+     */
+    public static SymbolCounts CharFrequencies(String pathName) {
+        SymbolCounts counts = new SymbolCounts();
+        Reader input;
         try {
-            input = new BufferedReader(new FileReader(pathName+".txt"));             // try to open the file
+            input = new InputStreamReader(new FileInputStream(pathName+".txt"), CHARSET);  // try to open the file; reading whole blocks, so no BufferedReader needed
         }
         catch (FileNotFoundException e) {
             System.err.println("Can not open the file.\n" + e.getMessage());
-            return FrequencyMap;                                                 // catch error if file cannot be opened
+            return counts;
         }
-        try{                                                                      // create a string from the inputted file
-            int character;
-            while((character = input.read()) != -1) {
-                char c = (char)character;                                       // Iterate through each character using input.read()
-                if (FrequencyMap.containsKey(c)) {
-                    FrequencyMap.put(c, FrequencyMap.get(c) + 1);                               // if the character is in the map, increase the frequency value by 1
-                }
-                else {
-                    FrequencyMap.put(c, 1);                                                     // If character is not in the map yet, add it with value 1
+        try {
+            char[] block = new char[BLOCK_SIZE];
+            int n;
+            while ((n = input.read(block)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    counts.increment(block[i]);                                             // count every character in the block
                 }
             }
+        }
+        catch(IOException e){
+            System.err.println("IOError while reading. \n"+ e.getMessage());
+        }
+        try {
+            input.close();
+        }
+        catch(IOException e){
+            System.err.println("Can not close file \n"+ e.getMessage());
+        }
+        return counts;
+    }
 
+    /**
+     * Builds a histogram of the raw bytes of the file: entry b is the number of times byte value b occurs
+     * Counts straight out of a read-only memory mapping of the file (at most MAP_SEGMENT bytes mapped at a time),
+     * with no character decoding or copying; counts are longs so files over 2 GB work
+     * @param pathName is name of the file without ".txt"
+     */
+    public static long[] ByteFrequencies(String pathName) {
+        long[] histogram = new long[256];
+        FileChannel input;
+        try {
+            input = FileChannel.open(Paths.get(pathName+".txt"), StandardOpenOption.READ);
+        }
+        catch (IOException e) {
+            System.err.println("Can not open the file.\n" + e.getMessage());
+            return histogram;
+        }
+        try {
+            int[] counts = new int[256];                                                    // int counts for speed, moved into the histogram after every segment so they cannot overflow
+            long size = input.size();
+            for (long start = 0; start < size; start += MAP_SEGMENT) {
+                MappedByteBuffer segment = input.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAP_SEGMENT, size - start));
+                for (int i = 0, n = segment.limit(); i < n; i++) {
+                    counts[segment.get(i) & 0xFF]++;
+                }
+                for (int b = 0; b < 256; b++) {
+                    histogram[b] += counts[b];
+                    counts[b] = 0;
+                }
+            }
         }
         catch(IOException e){
-            System.err.println("IOError while reading. \n"+ e.getMessage());                    // catch error if reading was unsuccessful
+            System.err.println("IOError while reading. \n"+ e.getMessage());
         }
         try {
             input.close();
@@ -44,7 +113,7 @@ public class HuffmanEncoding {
         catch(IOException e){
             System.err.println("Can not close file \n"+ e.getMessage());
         }
-        return FrequencyMap;                                                                // return the map
+        return histogram;
     }
 
     /**
@@ -63,6 +132,25 @@ public class HuffmanEncoding {
         return pq;                                                                                               // return priority queue
     }
 
+    /**
+     * Returns how far to shift counts right so that TreeCreation's sums stay within TreeElement's int frequencies:
+     * 0 (counts used as they are) unless the total is over Integer.MAX_VALUE, as it can be for inputs over 2 GB
+     * Scaled counts give a Huffman tree for nearly the same distribution, so the code is close to optimal but not
+     * exactly optimal; CanonicalCode.fromFrequencies builds exact code lengths from the long counts without a tree
+     * @param total     sum of all counts
+     * @param symbols   number of counts that are not 0 (each is kept at least 1 after scaling)
+     */
+    static int frequencyShift(long total, int symbols) {
+        int shift = 0;
+        while ((total >> shift) + symbols > Integer.MAX_VALUE) shift++;                       // the root's frequency is at most the sum of the scaled counts
+        return shift;
+    }
+
+    // a count shifted right, kept at least 1 so every character that occurs still gets a code
+    private static int scaled(long count, int shift) {
+        return (int) Math.max(1, count >> shift);
+    }
+
     /**
      * Creates binary tree with least frequent characters deepest in the tree
      * only leafs contain characters
@@ -127,24 +215,43 @@ public class HuffmanEncoding {
     }
 
     /**
-     * Compresses a file of words into bits
-     * Uses code map to get code string for each character in the file
+     * Compresses a file of words into bits, with the code built for it by CharFrequencies and CanonicalCode.fromCounts:
+     * no Huffman tree of objects, and no code longer than CodeLengths.DEFAULT_MAX_LENGTH bits
+     * Throws IOException
+     */
+    public static void Compression(String pathName) throws IOException {
+        Compression(pathName, CanonicalCode.fromCounts(CharFrequencies(pathName), CodeLengths.DEFAULT_MAX_LENGTH));
+    }
+
+    /**
+     * Compresses a file of words into bits, with the canonical code that has the same lengths as CodeMap
+     * (e.g., from CodeRetrieval)
      * Throws IOException
      */
     public static void Compression(String pathName, Map<Character, String> CodeMap) throws IOException {
+        Compression(pathName, CanonicalCode.fromCodeMap(CodeMap));                            // same code lengths as CodeMap, but codes can be rebuilt from the lengths alone
+    }
 
-        BufferedReader input = new BufferedReader(new FileReader(pathName+".txt"));             // open Buffered reader to enable reading from a file
-        BufferedBitWriter bitOutput = new BufferedBitWriter(pathName + "_compressed.txt");     // Open buffered bit writer to enable writing compressed bits to a file
-        try {
-            int cInt;                                       // Read next character's integer representation
-            while ((cInt = input.read()) != -1) {           // while there are characters to read
-                char c = (char) cInt;                       // cast value to character
-                String bits = CodeMap.get(c);               // get the String code value from map at the character just read
-                for (int i = 0; i < bits.length(); i++) {       // for the length of the string code
-                    bitOutput.writeBit(bits.charAt(i) == '1');     // Write bit according to true/false boolean of string code
+    /**
+     * Compresses a file of words into bits
+     * Writes a header (see COMPRESSED_MAGIC) holding the canonical code lengths and the number of characters,
+     * then the characters encoded with the code (see HuffmanEncoder)
+     * Throws IOException
+     */
+    public static void Compression(String pathName, CanonicalCode code) throws IOException {
 
-                }
-            }
+        BufferedReader input = new BufferedReader(new InputStreamReader(new FileInputStream(pathName+".txt"), CHARSET));     // open Buffered reader to enable reading from a file
+        FileOutputStream file = new FileOutputStream(pathName + "_compressed.txt");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file));         // Open output for header and compressed bits
+        try {
+            output.writeInt(COMPRESSED_MAGIC);
+            output.writeByte(COMPRESSED_VERSION);
+            output.writeLong(0);                                                                // character count, filled in once it is known
+            code.write(output);
+
+            long count = new HuffmanEncoder(code).encode(input, output);                     // pack the code of every character, whole bytes at a time
+            output.flush();
+            file.getChannel().write(ByteBuffer.allocate(8).putLong(0, count), COUNT_OFFSET);    // go back and record the character count
         }
         catch(IOException e) {
             System.err.println("Could not read and convert original file to bit file.\n" + e.getMessage());     // catch exception if file could not be read
@@ -152,50 +259,46 @@ public class HuffmanEncoding {
 
         finally{                                                                            // use finally to close the files so they are closed no matter what
             input.close();
-            bitOutput.close();                                                              // close both files
+            output.close();                                                                 // close both files
             }
 
     }
 
     /**
      * Takes a compressed file and decompresses it
-     * Searches through the created tree following string code to find each character
+     * Everything needed is in the file's header, so this works in a different run than Compression
+     * Decodes whole characters at a time with a lookup table (see HuffmanDecoder)
      * //@throws IOException
      */
-    public static void Decompression(String pathName, BinaryTree<TreeElement> HuffmanTree) throws IOException {
-        BufferedBitReader bitInput = new BufferedBitReader(pathName+"_compressed.txt");                         // Open buffered bit reader to read compressed file
-        BufferedWriter Output = new BufferedWriter(new FileWriter(pathName+"_decompressed.txt"));               // open Buffered writer to write translated bits
-        BinaryTree<TreeElement> HuffmanTree1 = HuffmanTree;                                                              // create copy of tree that will be used for setting back to original tree after going down a path
-
-        if (HuffmanTree1 != null && HuffmanTree1.isLeaf()){                                                              // check if tree is one character or repeating one character
-            int i = 0;
-            while (i < HuffmanTree1.data.getFrequency()){                                                                // get frequency of that character
-                Output.write(HuffmanTree1.data.getCharacter());                                                          // write character number of times of its frequency
-                i+=1;
-            }
-        }
+    public static void Decompression(String pathName) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(pathName+"_compressed.txt")));     // Open compressed file
+        BufferedWriter Output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(pathName+"_decompressed.txt"), CHARSET));    // open Buffered writer to write translated bits
 
         try{
-            while (bitInput.hasNext()) {                                                                                  // while there are still bits to read
-                boolean bit = bitInput.readBit();                                                                         // use read bit to cycle through bits
-                if (bit) {
-                    HuffmanTree = HuffmanTree.getRight();                                                                 // if bit value true, get right child
-                }
-                if (!bit) {
-                    HuffmanTree = HuffmanTree.getLeft();                                                                  // if bit value is false, get left child
-                }
-                if (HuffmanTree.isLeaf()) {
-                    Output.write(HuffmanTree.data.getCharacter());                                                        // If the tree is at a leaf, get the character from that leaf
-                    HuffmanTree = HuffmanTree1;                                                                           // reset tree to its original setting
-                }
+            if (input.readInt() != COMPRESSED_MAGIC) {
+                throw new IOException("Not a compressed file: " + pathName + "_compressed.txt");
+            }
+            int version = input.readUnsignedByte();
+            if (version != COMPRESSED_VERSION) {
+                throw new IOException("Unsupported compressed file version " + version);
+            }
+            long count = input.readLong();                                                                              // number of characters to decode
+            CanonicalCode code = CanonicalCode.read(input);
 
+            if (code.size() == 1) {                                                                                     // one character or repeating one character takes no bits
+                for (long i = 0; i < count; i++) {
+                    Output.write(code.getSymbol(0));
+                }
+            }
+            else if (code.size() > 1) {
+                code.decoder().decode(input, Output, count);                                                            // translate bits to characters several bits per lookup
             }
         }
         catch(IOException e){
             System.err.println("Could not read and convert compressed file to decompressed file"+e.getMessage());                   // catch error if there was error reading and decompressing
         }
         finally {
-            bitInput.close();                                                               // use finally to close file, need it to close regardless of whether there was an error
+            input.close();                                                                  // use finally to close file, need it to close regardless of whether there was an error
             Output.close();
         }
 
@@ -207,63 +310,58 @@ public class HuffmanEncoding {
     public static void main(String[] args) throws Exception{
 
         // Test Case 1: Checking function of each method on small text file
-        // 1 Checking frequency map construction
+        // 1 Checking character counting
         String pathName = "Inputs/hello";
-        Map<Character, Integer> freqMap = FrequencyMap(pathName);
-        //System.out.println(FrequencyMap(pathName));
-
-        //2 Checking priority queue function
-        PriorityQueue<BinaryTree<TreeElement>> pq = TreestoPQ(freqMap);
-//        System.out.println(pq.poll());                                                                // used these to check priority queue was extracting min in correct order
-//        System.out.println(pq.poll());
-//        System.out.println(pq.poll());
-//        System.out.println(pq.poll());
+        SymbolCounts counts = CharFrequencies(pathName);
+        //System.out.println(counts.size());
 
-        //3 Checking Tree Creation Function
-        BinaryTree<TreeElement> HuffmanTree = TreeCreation(pq);
-        //System.out.println(HuffmanTree);
+        //2 Checking code construction (code lengths straight from the counts, no tree)
+        CanonicalCode code = CanonicalCode.fromCounts(counts, CodeLengths.DEFAULT_MAX_LENGTH);
+        //System.out.println(code.toCodeMap());
 
-        //4 Testing CodeMap Function
-        Map<Character, String> CodeMap = CodeRetrieval(HuffmanTree);
-        //System.out.println(CodeMap);
+        //3 Testing Compression Function
+        Compression(pathName, code);
 
-        //5 Testing Compression Function
-        Compression(pathName, CodeMap);
-
-        //6 Testing Decompression Function
-        Decompression(pathName, HuffmanTree);
+        //4 Testing Decompression Function
+        Decompression(pathName);
 
         // Test Case 2: Checking compression and decompression on an empty file
         String pathName2 = "Inputs/empty";
-        BinaryTree<TreeElement> HuffmanTree2 = TreeCreation(TreestoPQ(FrequencyMap(pathName2)));
-        Compression(pathName2, CodeRetrieval(HuffmanTree2));
-        Decompression(pathName2, HuffmanTree2);
+        Compression(pathName2);
+        Decompression(pathName2);
 
         // Test Case 3: Checking compression and decompression on a file containing only one character
         String pathName3 = "Inputs/singlecharacter";
-        BinaryTree<TreeElement> HuffmanTree3 = TreeCreation(TreestoPQ(FrequencyMap(pathName3)));
-        Compression(pathName3, CodeRetrieval(HuffmanTree3));
-        Decompression(pathName3, HuffmanTree3);
+        Compression(pathName3);
+        Decompression(pathName3);
 
         // Test Case 4: Checking compression and decompression on a file containing one repeating character
         String pathName4 = "Inputs/repeatingcharacter";
-        BinaryTree<TreeElement> HuffmanTree4 = TreeCreation(TreestoPQ(FrequencyMap(pathName4)));
-        Compression(pathName4, CodeRetrieval(HuffmanTree4));
-        Decompression(pathName4, HuffmanTree4);
+        Compression(pathName4);
+        Decompression(pathName4);
 
         // Test Case 5: Checking compression and decompression on US Constitution
         String pathName5 = "Inputs/USConstitution";
-        BinaryTree<TreeElement> HuffmanTree5 = TreeCreation(TreestoPQ(FrequencyMap(pathName5)));
-        Compression(pathName5, CodeRetrieval(HuffmanTree5));
-        Decompression(pathName5, HuffmanTree5);
+        Compression(pathName5);
+        Decompression(pathName5);
 
         // Test Case 6: Checking compression and decompression on WarAndPeace text
         String pathName6 = "Inputs/WarAndPeace";
-        BinaryTree<TreeElement> HuffmanTree6 = TreeCreation(TreestoPQ(FrequencyMap(pathName6)));
-        Compression(pathName6, CodeRetrieval(HuffmanTree6));
-        Decompression(pathName6, HuffmanTree6);
+        Compression(pathName6);
+        Decompression(pathName6);
+
+        // Test Case 7: Checking block mode (parallel) compression and decompression on WarAndPeace text, as raw bytes
+        // (to WarAndPeace_block_compressed.txt and WarAndPeace_block_decompressed.txt)
+        BlockHuffman.compress(pathName6);
+        BlockHuffman.decompress(pathName6);
 
-        // The size of the compressed WarAndPeace File is 1,811,745 bytes (1.8 MB on disk)
+        // Test Case 8: Checking single-pass streaming compression and decompression on WarAndPeace text, through channels
+        try (FileInputStream in = new FileInputStream(pathName6 + ".txt"); FileOutputStream out = new FileOutputStream(pathName6 + "_stream_compressed.txt")) {
+            HuffmanOutputStream.compress(in.getChannel(), out.getChannel(), BlockHuffman.DEFAULT_BLOCK_SIZE);
+        }
+        try (FileInputStream in = new FileInputStream(pathName6 + "_stream_compressed.txt"); FileOutputStream out = new FileOutputStream(pathName6 + "_stream_decompressed.txt")) {
+            HuffmanInputStream.decompress(in.getChannel(), out.getChannel());
+        }
 
 
 
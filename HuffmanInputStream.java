@@ -0,0 +1,122 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Reads back a stream written by HuffmanOutputStream, decoding one block (frame) at a time as it is needed
+ * Memory is bounded by the largest block, so it works on unbounded streams
+ */
+public class HuffmanInputStream extends FilterInputStream {
+    private final DataInputStream input;
+    private byte[] block = new byte[0];     // decoded bytes of the current frame
+    private byte[] bits = new byte[0];      // compressed bytes of the current frame, reused between frames
+    private int pos, count;                 // next byte to return from block, and number of bytes in it
+    private boolean ended;                  // end marker read
+
+    /**
+     * Starts reading a compressed stream from in
+     * @throws IOException if in does not start with a compressed stream header
+     */
+    public HuffmanInputStream(InputStream in) throws IOException {
+        super(in);
+        input = new DataInputStream(in);
+        if (input.readInt() != HuffmanOutputStream.MAGIC) {
+            throw new IOException("Not a compressed stream");
+        }
+        int version = input.readUnsignedByte();
+        if (version != HuffmanOutputStream.VERSION) {
+            throw new IOException("Unsupported compressed stream version " + version);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == count && !nextBlock()) return -1;
+        return block[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (pos == count && !nextBlock()) return -1;
+        int n = Math.min(len, count - pos);
+        System.arraycopy(block, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return count - pos;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && (pos < count || nextBlock())) {
+            int step = (int) Math.min(n - skipped, count - pos);
+            pos += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    // decodes the next frame into block; returns false at the end marker
+    private boolean nextBlock() throws IOException {
+        while (!ended) {
+            int size = input.readInt();
+            if (size == 0) {
+                ended = true;
+                break;
+            }
+            if (size < 0 || size > BlockHuffman.MAX_BLOCK_SIZE) {
+                throw new IOException("Corrupt compressed stream: block of " + size + " bytes");
+            }
+            CanonicalCode code = CanonicalCode.read(input);
+            int compressed = input.readInt();
+            if (compressed < 0 || compressed > (long) size * HuffmanDecoder.MAX_CODE_LENGTH / 8 + 1) {
+                throw new IOException("Corrupt compressed stream: " + compressed + " compressed bytes for a block of " + size);
+            }
+            if (bits.length < compressed) bits = new byte[compressed];
+            input.readFully(bits, 0, compressed);
+
+            if (block.length < size) block = new byte[size];
+            if (code.size() == 1) {
+                Arrays.fill(block, 0, size, (byte) code.getSymbol(0));         // a lone symbol takes no bits
+            }
+            else if (code.size() > 1) {
+                code.decoder().decode(ByteBuffer.wrap(bits, 0, compressed), ByteBuffer.wrap(block), size);
+            }
+            else {
+                throw new IOException("Corrupt compressed stream: block of " + size + " bytes without a code");
+            }
+            pos = 0;
+            count = size;
+            return true;
+        }
+        pos = count = 0;
+        return false;
+    }
+
+    /**
+     * Decompresses a stream written by HuffmanOutputStream from in to out, one block at a time
+     * Neither channel is closed
+     */
+    public static void decompress(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        HuffmanInputStream input = new HuffmanInputStream(new BufferedInputStream(Channels.newInputStream(in)));
+        byte[] buffer = new byte[1 << 16];
+        int n;
+        while ((n = input.read(buffer)) != -1) {
+            ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+            while (chunk.hasRemaining()) out.write(chunk);
+        }
+    }
+}
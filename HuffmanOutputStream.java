@@ -0,0 +1,132 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Single-pass Huffman compression of a byte stream of any length (pipes, sockets, files still being written)
+ * Bytes are collected into blocks of at most blockSize; each full block gets its own code, rebuilt from that block's
+ * histogram, so memory stays bounded and the input is read only once
+ * Read the result back with HuffmanInputStream
+ *
+ * Stream layout: magic, version, then frames of (byte count, code table (CanonicalCode.write), compressed length, bits),
+ * ended by a frame with byte count 0
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+    public static final int MAGIC = 0x48554653;                 // "HUFS"
+    public static final int VERSION = 1;
+
+    private final DataOutputStream output;
+    private final byte[] block;             // bytes waiting to be compressed
+    private int count;                      // number of bytes in block
+    private byte[] bits = new byte[0];      // compressed block, reused between blocks
+    private boolean finished;               // end marker written
+
+    /**
+     * Starts a compressed stream on out with blocks of BlockHuffman.DEFAULT_BLOCK_SIZE bytes
+     */
+    public HuffmanOutputStream(OutputStream out) throws IOException {
+        this(out, BlockHuffman.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Starts a compressed stream on out; at most blockSize bytes are held before they are compressed
+     */
+    public HuffmanOutputStream(OutputStream out, int blockSize) throws IOException {
+        super(out);
+        if (blockSize < 1 || blockSize > BlockHuffman.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must be 1 through " + BlockHuffman.MAX_BLOCK_SIZE + ": " + blockSize);
+        }
+        output = new DataOutputStream(out);
+        block = new byte[blockSize];
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (finished) throw new IOException("Write after end of compressed stream");
+        if (count == block.length) writeBlock();
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) throw new IOException("Write after end of compressed stream");
+        while (len > 0) {
+            if (count == block.length) writeBlock();
+            int n = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Compresses the bytes written so far as a (possibly short) block and flushes the underlying stream,
+     * so a reader sees everything written up to here
+     */
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) writeBlock();
+        output.flush();
+    }
+
+    /**
+     * Compresses any remaining bytes and writes the end marker, leaving the underlying stream open
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        if (count > 0) writeBlock();
+        output.writeInt(0);
+        output.flush();
+        finished = true;
+    }
+
+    /**
+     * Finishes the compressed stream and closes the underlying stream
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    // compresses the block with a code of its own and writes it as one frame
+    private void writeBlock() throws IOException {
+        long[] histogram = new long[256];
+        for (int i = 0; i < count; i++) histogram[block[i] & 0xFF]++;
+        CanonicalCode code = BlockHuffman.buildCode(histogram);
+        long length = 0;
+        for (int i = 0; i < code.size(); i++) length += histogram[code.getSymbol(i)] * code.getLength(i);
+        int compressed = (int) ((length + 7) / 8);
+        if (bits.length < compressed) bits = new byte[compressed];
+        new HuffmanEncoder(code).encode(ByteBuffer.wrap(block, 0, count), ByteBuffer.wrap(bits));
+
+        output.writeInt(count);
+        code.write(output);
+        output.writeInt(compressed);
+        output.write(bits, 0, compressed);
+        count = 0;
+    }
+
+    /**
+     * Compresses everything readable from in to out in one pass, holding at most blockSize input bytes
+     * Neither channel is closed
+     */
+    public static void compress(ReadableByteChannel in, WritableByteChannel out, int blockSize) throws IOException {
+        HuffmanOutputStream output = new HuffmanOutputStream(new BufferedOutputStream(Channels.newOutputStream(out)), blockSize);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        while (in.read(buffer) >= 0) {
+            output.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+        output.finish();
+    }
+}
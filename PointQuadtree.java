@@ -1,5 +1,13 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
 
 /**
  * A point quadtree: stores an element at a 2D position, 
@@ -11,25 +19,79 @@ import java.util.List;
  * 
  */
 public class PointQuadtree<E extends Point2D> {
-	private E point;							// the point anchoring this node
+	private static final int PARALLEL_THRESHOLD = 1 << 13;	// regions with fewer points than this are built by the current thread
+	private static final int QUERY_PARTITION = 256;			// circles traversed together by one task in a parallel batch
+	private static final Object VISITED = new Object();		// stack marker: the node below has had its children pushed
+	private static final ThreadLocal<Stack> STACKS = ThreadLocal.withInitial(Stack::new);	// one traversal stack per thread, reused by every query
+
+	private E point;							// the point anchoring this node (null once removed; the node still splits its region)
+	private Object[] more;						// further points (all E) at exactly the anchor's position, in the order they came, null-padded at the end
+	private double px, py;						// the point's position, as of its insert or last move
 	private int x1, y1;							// upper-left corner of the region
 	private int x2, y2;							// lower-right corner of the region
 	private PointQuadtree<E> c1, c2, c3, c4;	// children
+	private PointQuadtree<E> parent;			// null at the root
+	private int size = 1;						// points held in this subtree
+	private int dead;							// nodes in this subtree holding no point
+	private IdentityHashMap<E, PointQuadtree<E>> index;	// at the root, once something has been removed or moved: the node holding each point
 
 	/**
 	 * Initializes a leaf quadtree, holding the point in the rectangle
 	 */
 	public PointQuadtree(E point, int x1, int y1, int x2, int y2) {
+		this(point, point.getX(), point.getY(), x1, y1, x2, y2);
+	}
+
+	// a leaf holding the point at (px, py)
+	private PointQuadtree(E point, double px, double py, int x1, int y1, int x2, int y2) {
 		this.point = point;
+		this.px = px; this.py = py;
 		this.x1 = x1; this.y1 = y1; this.x2 = x2; this.y2 = y2;
 	}
 
 	// Getters
 	
+	/**
+	 * Returns the point anchoring this node, or null if it has been removed
+	 */
 	public E getPoint() {
 		return point;
 	}
 
+	/**
+	 * Returns the number of points this node holds: its anchor and any others at exactly the same position
+	 */
+	int pointCount() {
+		if (point == null) return 0;
+		int lo = 0, hi = more == null ? 0 : more.length;		// more is filled from the front, so find its first null
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (more[mid] != null) lo = mid + 1;
+			else hi = mid;
+		}
+		return 1 + lo;
+	}
+
+	/**
+	 * Returns this node's i-th point: its anchor first, then any others at the same position, latest first
+	 */
+	@SuppressWarnings("unchecked")
+	E getPoint(int i) {
+		return i == 0 ? point : (E) more[pointCount() - 1 - i];
+	}
+
+	/**
+	 * Returns the position this node's point is stored and queried at (as of its insert or last move),
+	 * which may differ from what the point itself reports
+	 */
+	double getPointX() {
+		return px;
+	}
+
+	double getPointY() {
+		return py;
+	}
+
 	public int getX1() {
 		return x1;
 	}
@@ -66,61 +128,427 @@ public class PointQuadtree<E extends Point2D> {
 		return (quadrant==1 && c1!=null) || (quadrant==2 && c2!=null) || (quadrant==3 && c3!=null) || (quadrant==4 && c4!=null);
 	}
 
+	/**
+	 * Builds a balanced quadtree holding the points, using the common ForkJoinPool
+	 * @see #build(List, int, int, int, int, ForkJoinPool)
+	 */
+	public static <E extends Point2D> PointQuadtree<E> build(List<E> points, int x1, int y1, int x2, int y2) {
+		return build(points, x1, y1, x2, y2, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Builds a balanced quadtree holding the points in the rectangle, whatever their order
+	 * Regions are anchored alternately at the median by x (then y) and by y (then x); as insert sends a point to a side
+	 * of its anchor by comparing those same pairs, each child gets at most half of its region's points, so the depth
+	 * stays logarithmic even when many points share a coordinate or a position
+	 * Quadrants of large regions are built in parallel on the pool
+	 * @param points	at least one point
+	 */
+	public static <E extends Point2D> PointQuadtree<E> build(List<E> points, int x1, int y1, int x2, int y2, ForkJoinPool pool) {
+		if (points.isEmpty()) {
+			throw new IllegalArgumentException("A quadtree needs at least one point");
+		}
+		Object[] all = points.toArray();
+		double[] xs = new double[all.length], ys = new double[all.length];
+		for (int i = 0; i < all.length; i++) {
+			xs[i] = ((Point2D) all[i]).getX();
+			ys[i] = ((Point2D) all[i]).getY();
+		}
+		return pool.invoke(new Build<E>(all, xs, ys, x1, y1, x2, y2, false));
+	}
+
+	/**
+	 * Builds the subtree for one region; forks the large quadrants as new tasks
+	 */
+	private static class Build<E extends Point2D> extends RecursiveTask<PointQuadtree<E>> {
+		private static final long serialVersionUID = 1L;
+
+		private final Object[] points;			// the region's points (all E), reordered while building
+		private final double[] xs, ys;			// their positions, reordered along with them
+		private final int x1, y1, x2, y2;
+		private final boolean byY;				// whether this region's anchor is the median by y instead of x
+
+		Build(Object[] points, double[] xs, double[] ys, int x1, int y1, int x2, int y2, boolean byY) {
+			this.points = points;
+			this.xs = xs; this.ys = ys;
+			this.x1 = x1; this.y1 = y1; this.x2 = x2; this.y2 = y2;
+			this.byY = byY;
+		}
+
+		@Override
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		protected PointQuadtree<E> compute() {
+			int n = points.length;
+			int middle = n / 2;
+			if (byY) select(points, ys, xs, middle);
+			else select(points, xs, ys, middle);
+			PointQuadtree<E> node = new PointQuadtree<E>((E) points[middle], xs[middle], ys[middle], x1, y1, x2, y2);
+
+			// sort the other points into quadrants 1-4 like insert does, keeping those at the anchor's position in the node
+			int[] counts = new int[5];
+			int[] quadrant = new int[n];
+			for (int i = 0; i < n; i++) {
+				if (i != middle) counts[quadrant[i] = node.quadrant(xs[i], ys[i])]++;
+			}
+			if (counts[0] > 0) {
+				node.more = new Object[counts[0]];
+				int held = 0;
+				for (int i = 0; i < n; i++) {
+					if (i != middle && quadrant[i] == 0) node.more[held++] = points[i];
+				}
+			}
+			Object[][] quadrants = new Object[5][];
+			double[][] quadrantXs = new double[5][], quadrantYs = new double[5][];
+			for (int q = 1; q <= 4; q++) {
+				quadrants[q] = new Object[counts[q]];
+				quadrantXs[q] = new double[counts[q]];
+				quadrantYs[q] = new double[counts[q]];
+			}
+			int[] filled = new int[5];
+			for (int i = 0; i < n; i++) {
+				int q = quadrant[i];
+				if (i == middle || q == 0) continue;
+				quadrants[q][filled[q]] = points[i];
+				quadrantXs[q][filled[q]] = xs[i];
+				quadrantYs[q][filled[q]++] = ys[i];
+			}
+
+			Build<E>[] tasks = new Build[5];
+			PointQuadtree<E>[] built = new PointQuadtree[5];
+			for (int q = 1; q <= 4; q++) {
+				if (quadrants[q].length == 0) continue;
+				tasks[q] = new Build<E>(quadrants[q], quadrantXs[q], quadrantYs[q],
+						node.childX1(q), node.childY1(q), node.childX2(q), node.childY2(q), !byY);
+				if (quadrants[q].length >= PARALLEL_THRESHOLD) tasks[q].fork();
+				else built[q] = tasks[q].compute();
+			}
+			for (int q = 1; q <= 4; q++) {
+				if (tasks[q] != null && built[q] == null) built[q] = tasks[q].join();
+				if (built[q] == null) continue;
+				built[q].parent = node;
+				node.size += built[q].size;
+			}
+			node.size += counts[0];
+			node.c1 = built[1]; node.c2 = built[2]; node.c3 = built[3]; node.c4 = built[4];
+			return node;
+		}
+	}
+
+	/**
+	 * Reorders the points (and their positions) so the one at index k is the k-th smallest by a then b,
+	 * with smaller or equal pairs before it and larger or equal after; a and b are xs and ys, in either order
+	 */
+	private static void select(Object[] points, double[] a, double[] b, int k) {
+		int lo = 0, hi = points.length - 1;
+		while (lo < hi) {
+			int m = (lo + hi) >>> 1;
+			double pivotA = a[m], pivotB = b[m];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (a[i] < pivotA || (a[i] == pivotA && b[i] < pivotB)) i++;
+				while (a[j] > pivotA || (a[j] == pivotA && b[j] > pivotB)) j--;
+				if (i <= j) {
+					Object t = points[i]; points[i] = points[j]; points[j] = t;
+					double ta = a[i]; a[i] = a[j]; a[j] = ta;
+					double tb = b[i]; b[i] = b[j]; b[j] = tb;
+					i++; j--;
+				}
+			}
+			if (k <= j) hi = j;
+			else if (k >= i) lo = i;
+			else return;
+		}
+	}
+
 	/**
 	 * Inserts the point into the tree
+	 * It goes down to exactly one quadrant at each node: right of the anchor if its (x, y) is greater, below if its
+	 * (y, x) is; a point at exactly an anchor's position is kept in that anchor's node instead
 	 */
 	public void insert(E p2) {
-		// TODO: YOUR CODE HERE
-		if (point.getX() <= p2.getX() && p2.getX()<= x2 && y1 <= p2.getY() && p2.getY() <= point.getY()){			// point in quadrant 1
-			if (hasChild(1)){ getChild(1).insert(p2);}														// if has a child, recursive call
-			else {c1 = new PointQuadtree<E>(p2,(int) point.getX(), y1, x2, (int)point.getY());}						// if not, set child to be p2 with updated region
+		PointQuadtree<E> node = add(p2, p2.getX(), p2.getY());
+		if (node == null) return;
+		PointQuadtree<E> root = node.root();
+		if (root.index != null) root.index.put(p2, node);
+	}
+
+	// inserts p2 at (x, y) into this subtree, if it is in the region; returns the node it went in, or null
+	private PointQuadtree<E> add(E p2, double x, double y) {
+		if (!contains(x, y)) return null;
+		PointQuadtree<E> node = this;
+		while (true) {
+			int quadrant = node.quadrant(x, y);
+			if (quadrant == 0) {
+				node.count(1, node.point == null ? -1 : 0);
+				node.hold(p2);
+				return node;
+			}
+			PointQuadtree<E> child = node.getChild(quadrant);
+			if (child == null) {
+				child = new PointQuadtree<E>(p2, x, y,
+						node.childX1(quadrant), node.childY1(quadrant), node.childX2(quadrant), node.childY2(quadrant));
+				child.parent = node;
+				node.setChild(quadrant, child);
+				node.count(1, 0);
+				return child;
+			}
+			node = child;
+		}
+	}
+
+	// adds to the points and empty nodes counted at this node and each one above
+	private void count(int points, int empty) {
+		for (PointQuadtree<E> node = this; node != null; node = node.parent) {
+			node.size += points;
+			node.dead += empty;
+		}
+	}
+
+	private PointQuadtree<E> root() {
+		PointQuadtree<E> node = this;
+		while (node.parent != null) node = node.parent;
+		return node;
+	}
+
+	// adds p2 to the points this node holds at its position (as the anchor, if the node is empty)
+	private void hold(E p2) {
+		if (point == null) {
+			point = p2;
+			return;
 		}
-		else if (x1 <= p2.getX() && p2.getX()<= point.getX() && y1 <= p2.getY() && p2.getY() <= point.getY()){		// same process for point in quadrant 2
-			if (hasChild(2)){ getChild(2).insert(p2);}
-			else {c2 = new PointQuadtree<E>(p2,x1, y1, (int)point.getX(), (int)point.getY());}
+		int held = pointCount() - 1;
+		if (more == null) more = new Object[2];
+		else if (held == more.length) more = Arrays.copyOf(more, 2 * held);
+		more[held] = p2;
+	}
+
+	// takes p2 out of the points this node holds (the latest of the others taking over as anchor); returns whether it was there
+	@SuppressWarnings("unchecked")
+	private boolean release(E p2) {
+		int others = pointCount() - 1;
+		if (point == p2) {
+			point = others > 0 ? (E) more[others - 1] : null;
 		}
-		if (x1 <= p2.getX() && p2.getX()<= point.getX() && point.getY() <= p2.getY() && p2.getY() <= y2){			// same process for point in quadrant 3
-			if (hasChild(3)){ getChild(3).insert(p2);}
-			else {c3 = new PointQuadtree<E>(p2,x1, (int)point.getY(), (int)point.getX(), y2);}
+		else {
+			int i = others - 1;
+			while (i >= 0 && more[i] != p2) i--;
+			if (i < 0) return false;
+			System.arraycopy(more, i + 1, more, i, others - 1 - i);
 		}
-		else if (point.getX() <= p2.getX() && p2.getX()<= x2 && point.getY() <= p2.getY() && p2.getY() <= y2){		// same process for point in quadrant 4
-			if (hasChild(4)){ getChild(4).insert(p2);}
-			else {c4 = new PointQuadtree<E>(p2,(int)point.getX(), (int)point.getY(), x2, y2);}
+		if (others > 0) more[others - 1] = null;
+		if (more != null && more[0] == null) more = null;
+		return true;
+	}
+
+	/**
+	 * Removes the point from this subtree
+	 * It is found through an index of the node holding each point (made by the first remove or move), so its
+	 * coordinates may have changed since it was inserted or moved. A node left empty with children stays, so they keep
+	 * their regions; one left empty without is unlinked. Once the empty nodes in a subtree around it outnumber its
+	 * points, just that subtree is rebuilt, so removals cost amortized logarithmic time and leave the depth bounded
+	 * @return	whether the point was in this subtree
+	 */
+	public boolean remove(E p2) {
+		PointQuadtree<E> node = find(p2);
+		if (node == null) return false;
+		node.release(p2);
+		if (!node.holds(p2)) node.root().index.remove(p2);		// (unless it was inserted twice)
+		detach(node);
+		return true;
+	}
+
+	/**
+	 * Moves the point to (newX, newY), which must be in this subtree's region
+	 * Like remove, it is found through the index, so it may already report its new position (or any other)
+	 * If it is alone in its node, stays in the node's region and leaves the children's regions as they were (they are
+	 * cut at its position rounded outward, so this holds for any move within the same unit square, and always in a
+	 * leaf), only its position changes; otherwise it is taken out of its node and inserted again
+	 * @return	whether the point was moved: false, with the tree unchanged, if the point was not in this subtree or
+	 * 			(newX, newY) is outside its region
+	 */
+	public boolean move(E p2, double newX, double newY) {
+		PointQuadtree<E> node = find(p2);
+		if (node == null || !contains(newX, newY)) return false;
+		if (newX == node.px && newY == node.py) return true;
+		if (node.more == null && node.contains(newX, newY) && node.keepsRegions(newX, newY)) {
+			node.px = newX;
+			node.py = newY;
+			return true;
 		}
+		PointQuadtree<E> moved = add(p2, newX, newY);			// first, so this subtree cannot be left empty and unlinked
+		node.root().index.put(p2, moved);
+		node.release(p2);
+		detach(node);
+		return true;
 	}
-	
+
+	// whether the point is among those this node holds
+	private boolean holds(E p2) {
+		for (int i = pointCount() - 1; i >= 0; i--) {
+			if (getPoint(i) == p2) return true;
+		}
+		return false;
+	}
+
+	// the node in this subtree holding p2, found through the root's index (made here the first time), or null
+	@SuppressWarnings("unchecked")
+	private PointQuadtree<E> find(E p2) {
+		PointQuadtree<E> root = root();
+		if (root.index == null) {
+			root.index = new IdentityHashMap<E, PointQuadtree<E>>(2 * root.size);
+			root.index(root);
+		}
+		PointQuadtree<E> node = root.index.get(p2);
+		if (this == root) return node;
+		for (PointQuadtree<E> above = node; above != null; above = above.parent) {
+			if (above == this) return node;
+		}
+		return null;
+	}
+
+	// puts each point in the subtree into this (root) node's index
+	@SuppressWarnings("unchecked")
+	private void index(PointQuadtree<E> subtree) {
+		Stack traversal = Stack.acquire();
+		try {
+			traversal.push(subtree);
+			while (traversal.top > 0) {
+				PointQuadtree<E> node = (PointQuadtree<E>) traversal.pop();
+				for (int i = 0, held = node.pointCount(); i < held; i++) index.put(node.getPoint(i), node);
+				traversal.pushChildren(node);
+			}
+		}
+		finally {
+			traversal.release();
+		}
+	}
+
 	/**
-	 * Finds the number of points in the quadtree (including its descendants)
+	 * Counts the point just released from node as gone, unlinks the node (and any empty parents) if left empty with
+	 * no children, then rebuilds the highest subtree above it, up to this node, whose empty nodes outnumber its points
 	 */
-	public int size() {
-		// TODO: YOUR CODE HERE -- compute directly, using only numbers not lists (i.e., don't just call allPoints() and return its size)
-		int sum = 0;
-		if (hasChild(1)){								// check for child in each quadrant
-			sum = sum + getChild(1).size();						// increase the sum by the sum each child returned
+	private void detach(PointQuadtree<E> node) {
+		int empty = node.point == null ? 1 : 0;					// change in empty nodes, for node and each one above
+		while (node.point == null && node.isLeaf() && node != this) {
+			PointQuadtree<E> up = node.parent;
+			up.setChild(up.quadrantOf(node), null);
+			node.parent = null;
+			empty--;
+			node = up;
+		}
+		PointQuadtree<E> highest = null;
+		boolean inside = true;									// still at or below this node
+		for (PointQuadtree<E> above = node; above != null; above = above.parent) {
+			above.size--;
+			above.dead += empty;
+			if (inside && above.dead > above.size) highest = above;
+			if (above == this) inside = false;
 		}
-		if (hasChild(2)){								// repeat above process for each quadrant
-			sum = sum + getChild(2).size();
+		if (highest != null) highest.rebalance();
+	}
+
+	// whether the children's regions would be the same were the anchor at (x, y): they are this node's region cut at
+	// the anchor rounded outward, so they are if the rounded anchor is the same on each side that has a child
+	private boolean keepsRegions(double x, double y) {
+		boolean floorX = Math.floor(x) == Math.floor(px), floorY = Math.floor(y) == Math.floor(py);
+		boolean ceilX = Math.ceil(x) == Math.ceil(px), ceilY = Math.ceil(y) == Math.ceil(py);
+		return (c1 == null || floorX && ceilY) && (c2 == null || ceilX && ceilY)
+				&& (c3 == null || ceilX && floorY) && (c4 == null || floorX && floorY);
+	}
+
+	/**
+	 * Rebuilds this subtree from its remaining points with build, dropping the empty nodes and restoring a
+	 * logarithmic depth; run automatically on a subtree whose empty nodes outnumber its points, and worth running
+	 * periodically (on the root) when many points have moved
+	 */
+	@SuppressWarnings("unchecked")
+	public void rebalance() {
+		int n = size, filled = 0;
+		Object[] points = new Object[n];
+		double[] xs = new double[n], ys = new double[n];
+		Stack traversal = Stack.acquire();
+		try {
+			traversal.push(this);
+			while (traversal.top > 0) {
+				PointQuadtree<E> node = (PointQuadtree<E>) traversal.pop();
+				for (int i = 0, held = node.pointCount(); i < held; i++) {
+					points[filled] = node.getPoint(i);
+					xs[filled] = node.px;
+					ys[filled++] = node.py;
+				}
+				traversal.pushChildren(node);
+			}
+		}
+		finally {
+			traversal.release();
 		}
-		if (hasChild(3)){
-			sum = sum + getChild(3).size();
+
+		int removed = dead;
+		c1 = c2 = c3 = c4 = null;
+		more = null;
+		if (n == 0) {											// nothing left: keep this node, empty
+			point = null;
+			if (parent != null) parent.count(0, 1 - removed);
+			dead = 1;
+			return;
 		}
-		if (hasChild(4)){
-			sum = sum + getChild(4).size();
+		PointQuadtree<E> rebuilt = ForkJoinPool.commonPool().invoke(new Build<E>(points, xs, ys, x1, y1, x2, y2, false));
+		point = rebuilt.point;
+		more = rebuilt.more;
+		px = rebuilt.px; py = rebuilt.py;
+		c1 = rebuilt.c1; c2 = rebuilt.c2; c3 = rebuilt.c3; c4 = rebuilt.c4;
+		for (int q = 1; q <= 4; q++) {
+			if (getChild(q) != null) getChild(q).parent = this;
 		}
-		sum = sum + 1;											// count the node which the size method was called on
-		return sum;
+		dead = 0;
+		if (parent != null) parent.count(0, -removed);
+		PointQuadtree<E> root = root();
+		if (root.index != null) root.index(this);
 	}
-	
+
+	/**
+	 * Finds the number of points in the quadtree (including its descendants)
+	 */
+	public int size() {
+		return size;
+	}
+
 	/**
 	 * Builds a list of all the points in the quadtree (including its descendants)
 	 */
 	public List<E> allPoints() {
-		// TODO: YOUR CODE HERE -- efficiency matters!
-		List<E> allpoints = new ArrayList<E>();					// create list here and use helper function to add all points to it
-		addToPoints(allpoints);									// call helper function
+		List<E> allpoints = new ArrayList<E>();
+		allPoints(allpoints::add);
 		return allpoints;
 	}
 
+	/**
+	 * Passes every point in the quadtree to the action, in the same order as allPoints, without building a list
+	 * Each node comes after its children 1-4; the walk uses an explicit stack, so deep trees cannot overflow the call stack
+	 */
+	@SuppressWarnings("unchecked")
+	public void allPoints(Consumer<? super E> action) {
+		Stack traversal = Stack.acquire();
+		try {
+			traversal.push(this);
+			while (traversal.top > 0) {
+				Object top = traversal.pop();
+				if (top == VISITED) {
+					PointQuadtree<E> node = (PointQuadtree<E>) traversal.pop();
+					for (int i = 0, held = node.pointCount(); i < held; i++) action.accept(node.getPoint(i));
+					continue;
+				}
+				PointQuadtree<E> node = (PointQuadtree<E>) top;
+				traversal.push(node);
+				traversal.push(VISITED);
+				traversal.pushChildren(node);
+			}
+		}
+		finally {
+			traversal.release();
+		}
+	}
+
 	/**
 	 * Uses the quadtree to find all points within the circle
 	 * @param cx	circle center x
@@ -129,51 +557,491 @@ public class PointQuadtree<E extends Point2D> {
 	 * @return    	the points in the circle (and the qt's rectangle)
 	 */
 	public List<E> findInCircle(double cx, double cy, double cr) {
-		// TODO: YOUR CODE HERE -- efficiency matters!
-		List<E> circlePoints = new ArrayList<E>();				// create list and use helper function to add to it
-		addToCircle(circlePoints, cx, cy ,cr);					// call helper function
+		List<E> circlePoints = new ArrayList<E>();
+		findInCircle(cx, cy, cr, circlePoints);
 		return circlePoints;
 	}
 
-	// TODO: YOUR CODE HERE for any helper methods
-	// recursively go through all nodes of the tree and add them to the points list
+	/**
+	 * Adds the points within the circle to the end of hits, so one list can be cleared and reused across queries
+	 * @return		the number of points added
+	 */
+	public int findInCircle(double cx, double cy, double cr, List<? super E> hits) {
+		return findInCircle(cx, cy, cr, hits::add, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Passes the points within the circle to the action, in the same order as findInCircle, without building a list
+	 * @return		the number of points passed
+	 */
+	public int findInCircle(double cx, double cy, double cr, Consumer<? super E> action) {
+		return findInCircle(cx, cy, cr, action, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Passes the points within the circle to the action, in the same order as findInCircle, stopping after maxHits
+	 * Nodes are visited with an explicit stack that each thread reuses, so a query allocates nothing of its own
+	 * @return		the number of points passed, at most maxHits
+	 */
+	@SuppressWarnings("unchecked")
+	public int findInCircle(double cx, double cy, double cr, Consumer<? super E> action, int maxHits) {
+		int hits = 0;
+		if (maxHits <= 0) return 0;
+		Stack traversal = Stack.acquire();
+		try {
+			traversal.push(this);
+			while (traversal.top > 0) {
+				PointQuadtree<E> node = (PointQuadtree<E>) traversal.pop();
+				if (!Geometry.circleIntersectsRectangle(cx, cy, cr, node.x1, node.y1, node.x2, node.y2)) continue;
+				if (node.point != null && Geometry.pointInCircle(node.px, node.py, cx, cy, cr)) {
+					for (int i = 0, held = node.pointCount(); i < held && hits < maxHits; i++, hits++) action.accept(node.getPoint(i));
+					if (hits == maxHits) break;
+				}
+				traversal.pushChildren(node);
+			}
+		}
+		finally {
+			traversal.release();
+		}
+		return hits;
+	}
+
+	/**
+	 * Finds the points within each of a batch of circles, in one traversal of the tree
+	 * Each node tests only the circles still active at its parent (those whose circle meets the parent's rectangle),
+	 * so upper nodes are tested once per node instead of once per query
+	 * @param cx	circle centers' x
+	 * @param cy	circle centers' y
+	 * @param cr	circle radii
+	 * @return		for each circle, the points in it, in the same order as findInCircle
+	 */
+	public List<List<E>> findInCircles(double[] cx, double[] cy, double[] cr) {
+		List<List<E>> hits = circleLists(cx, cy, cr);
+		int[] queries = IntStream.range(0, cx.length).toArray();
+		findInCircles(cx, cy, cr, queries, 0, queries.length, hits);
+		return hits;
+	}
+
+	/**
+	 * Finds the points within each of a batch of circles, like findInCircles, splitting the circles among the pool's threads
+	 * Circles are sorted by x and cut into strips of nearby circles, each traversed as its own batch
+	 */
+	public List<List<E>> findInCircles(double[] cx, double[] cy, double[] cr, ForkJoinPool pool) {
+		List<List<E>> hits = circleLists(cx, cy, cr);
+		int[] queries = IntStream.range(0, cx.length).boxed()
+				.sorted((a, b) -> Double.compare(cx[a], cx[b])).mapToInt(Integer::intValue).toArray();
+		pool.invoke(new Circles(cx, cy, cr, queries, 0, queries.length, hits));
+		return hits;
+	}
+
+	// an empty result list per circle, after checking the arrays agree
+	private List<List<E>> circleLists(double[] cx, double[] cy, double[] cr) {
+		if (cy.length != cx.length || cr.length != cx.length) {
+			throw new IllegalArgumentException("Need as many centers' y and radii as centers' x: " + cx.length + ", " + cy.length + ", " + cr.length);
+		}
+		List<List<E>> hits = new ArrayList<List<E>>(cx.length);
+		for (int i = 0; i < cx.length; i++) hits.add(new ArrayList<E>());
+		return hits;
+	}
+
+	/**
+	 * Splits a sorted range of circles in half until strips of QUERY_PARTITION are left, so idle workers can steal halves
+	 */
+	private class Circles extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final double[] cx, cy, cr;
+		private final int[] queries;
+		private final int from, to;
+		private final List<List<E>> hits;
+
+		Circles(double[] cx, double[] cy, double[] cr, int[] queries, int from, int to, List<List<E>> hits) {
+			this.cx = cx; this.cy = cy; this.cr = cr;
+			this.queries = queries;
+			this.from = from; this.to = to;
+			this.hits = hits;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= QUERY_PARTITION) {
+				findInCircles(cx, cy, cr, queries, from, to, hits);
+			}
+			else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Circles(cx, cy, cr, queries, from, middle, hits), new Circles(cx, cy, cr, queries, middle, to, hits));
+			}
+		}
+	}
+
+	/**
+	 * Runs circles queries[from..to) in one traversal, adding each circle's points to its list in hits
+	 * Each stacked node carries the range of a scratch buffer holding the circles that reached it; the circles that also
+	 * meet its rectangle are written just past that range, and that new range is what its children carry
+	 */
+	@SuppressWarnings("unchecked")
+	private void findInCircles(double[] cx, double[] cy, double[] cr, int[] queries, int from, int to, List<List<E>> hits) {
+		int[] active = Arrays.copyOfRange(queries, from, from + 4 * (to - from));
+		Object[] nodes = new Object[64];
+		int[] ranges = new int[2 * nodes.length];
+		int top = 0;
+		nodes[top] = this; ranges[0] = 0; ranges[1] = to - from;
+		top++;
+		while (top > 0) {
+			top--;
+			PointQuadtree<E> node = (PointQuadtree<E>) nodes[top];
+			nodes[top] = null;
+			int start = ranges[2 * top], end = ranges[2 * top + 1];
+			if (end + (end - start) > active.length) active = Arrays.copyOf(active, 2 * (end + (end - start)));
+			int next = end;
+			for (int i = start; i < end; i++) {
+				int q = active[i];
+				if (Geometry.circleIntersectsRectangle(cx[q], cy[q], cr[q], node.x1, node.y1, node.x2, node.y2)) active[next++] = q;
+			}
+			if (next == end) continue;
+			if (node.point != null) {
+				for (int i = end; i < next; i++) {
+					int q = active[i];
+					if (!Geometry.pointInCircle(node.px, node.py, cx[q], cy[q], cr[q])) continue;
+					for (int j = 0, held = node.pointCount(); j < held; j++) hits.get(q).add(node.getPoint(j));
+				}
+			}
+			if (top + 4 > nodes.length) {
+				nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+				ranges = Arrays.copyOf(ranges, 2 * nodes.length);
+			}
+			for (int q = 4; q >= 1; q--) {						// pushed 4 to 1 so they come off 1 to 4
+				PointQuadtree<E> child = node.getChild(q);
+				if (child == null) continue;
+				nodes[top] = child;
+				ranges[2 * top] = end;
+				ranges[2 * top + 1] = next;
+				top++;
+			}
+		}
+	}
+
+	/**
+	 * Counts the points within the circle, as findInCircle would find them, without building a list
+	 */
+	@SuppressWarnings("unchecked")
+	public int countInCircle(double cx, double cy, double cr) {
+		int count = 0;
+		Stack traversal = Stack.acquire();
+		try {
+			traversal.push(this);
+			while (traversal.top > 0) {
+				PointQuadtree<E> node = (PointQuadtree<E>) traversal.pop();
+				if (!Geometry.circleIntersectsRectangle(cx, cy, cr, node.x1, node.y1, node.x2, node.y2)) continue;
+				if (node.point != null && Geometry.pointInCircle(node.px, node.py, cx, cy, cr)) count += node.pointCount();
+				traversal.pushChildren(node);
+			}
+		}
+		finally {
+			traversal.release();
+		}
+		return count;
+	}
 
-	private void addToPoints(List<E> points){
-		if (hasChild(1)){								// call the function on any/every child
-			getChild(1).addToPoints(points);
+	/**
+	 * Uses the quadtree to find all points within the rectangle (edges included)
+	 * @return		the points in the rectangle (and the qt's rectangle), in the same order findInCircle uses
+	 */
+	public List<E> findInRectangle(double rx1, double ry1, double rx2, double ry2) {
+		List<E> hits = new ArrayList<E>();
+		addToRectangle(hits, rx1, ry1, rx2, ry2);
+		return hits;
+	}
+
+	/**
+	 * Counts the points within the rectangle, as findInRectangle would find them, without building a list
+	 */
+	@SuppressWarnings("unchecked")
+	public int countInRectangle(double rx1, double ry1, double rx2, double ry2) {
+		int count = 0;
+		Stack traversal = Stack.acquire();
+		try {
+			traversal.push(this);
+			while (traversal.top > 0) {
+				PointQuadtree<E> node = (PointQuadtree<E>) traversal.pop();
+				if (!node.rectangleIntersects(rx1, ry1, rx2, ry2)) continue;
+				if (node.pointInRectangle(rx1, ry1, rx2, ry2)) count += node.pointCount();
+				traversal.pushChildren(node);
+			}
+		}
+		finally {
+			traversal.release();
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the k points closest to (x, y), closest first (fewer if the tree holds fewer points)
+	 * Nodes are visited best-first, by the distance from (x, y) to their rectangle, and the search stops once the
+	 * next rectangle is farther than the k-th closest point found so far, so one traversal replaces guessing a radius
+	 * Both heaps are kept in the thread's traversal stack, so a query allocates nothing but its result
+	 */
+	@SuppressWarnings("unchecked")
+	public List<E> findNearest(double x, double y, int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException("Number of neighbors must not be negative: " + k);
+		}
+		List<E> nearest = new ArrayList<E>(Math.min(k, 1024));
+		if (k == 0) return nearest;
+
+		Stack traversal = Stack.acquire();
+		try {
+			Heap nodes = traversal.nodes(), best = traversal.best();		// best has the farthest on top
+			nodes.add(this, 0, distanceToRectangle(x, y));
+			while (nodes.size > 0) {
+				double bound = nodes.topDistance();
+				if (best.size == k && bound > best.topDistance()) break;			// nothing left can be closer
+				PointQuadtree<E> node = (PointQuadtree<E>) nodes.poll();
+				double dx = node.px - x, dy = node.py - y;
+				double distance = dx * dx + dy * dy;
+				for (int i = 0, held = node.pointCount(); i < held && (best.size < k || distance < best.topDistance()); i++) {
+					if (best.size == k) best.poll();
+					best.add(node, i, distance);
+				}
+				for (int q = 1; q <= 4; q++) {
+					if (!node.hasChild(q)) continue;
+					PointQuadtree<E> child = node.getChild(q);
+					double childBound = child.distanceToRectangle(x, y);
+					if (best.size < k || childBound <= best.topDistance()) nodes.add(child, 0, childBound);
+				}
+			}
+			while (best.size > 0) {
+				int index = best.topIndex();
+				nearest.add(((PointQuadtree<E>) best.poll()).getPoint(index));
+			}
 		}
-		if (hasChild(2)){
-			getChild(2).addToPoints(points);
+		finally {
+			traversal.release();
 		}
-		if (hasChild(3)){
-			getChild(3).addToPoints(points);
+		Collections.reverse(nearest);
+		return nearest;
+	}
+
+	// function to add all points inside a rectangle to a list, in the same order as findInCircle
+	@SuppressWarnings("unchecked")
+	private void addToRectangle(List<E> hits, double rx1, double ry1, double rx2, double ry2) {
+		Stack traversal = Stack.acquire();
+		try {
+			traversal.push(this);
+			while (traversal.top > 0) {
+				PointQuadtree<E> node = (PointQuadtree<E>) traversal.pop();
+				if (!node.rectangleIntersects(rx1, ry1, rx2, ry2)) continue;
+				if (node.pointInRectangle(rx1, ry1, rx2, ry2)) {
+					for (int i = 0, held = node.pointCount(); i < held; i++) hits.add(node.getPoint(i));
+				}
+				traversal.pushChildren(node);
+			}
 		}
-		if (hasChild(4)){
-			getChild(4).addToPoints(points);
+		finally {
+			traversal.release();
 		}
-		points.add(point);										// after going through all children, add point to list
+	}
+
+	// whether this node's region overlaps the rectangle (edges included)
+	private boolean rectangleIntersects(double rx1, double ry1, double rx2, double ry2) {
+		return x1 <= rx2 && rx1 <= x2 && y1 <= ry2 && ry1 <= y2;
+	}
+
+	// whether this node has a point, inside the rectangle (edges included)
+	private boolean pointInRectangle(double rx1, double ry1, double rx2, double ry2) {
+		return point != null && rx1 <= px && px <= rx2 && ry1 <= py && py <= ry2;
+	}
+
+	// whether (x, y) is in this node's region (edges included)
+	private boolean contains(double x, double y) {
+		return x1 <= x && x <= x2 && y1 <= y && y <= y2;
+	}
+
+	// the quadrant insert sends (x, y) into from this node: right (1 or 4) if (x, y) is greater than the anchor's,
+	// lower (3 or 4) if (y, x) is; 0 if (x, y) is the anchor's position
+	private int quadrant(double x, double y) {
+		if (x == px && y == py) return 0;
+		boolean right = x > px || (x == px && y > py);
+		boolean lower = y > py || (y == py && x > px);
+		return right ? (lower ? 4 : 1) : (lower ? 3 : 2);
+	}
+
+	// region of the child at the given quadrant: this node's region cut at its point, rounded outward to ints so
+	// the child's region holds every point sent to it
+	private int childX1(int quadrant) {
+		return quadrant == 1 || quadrant == 4 ? (int) Math.floor(px) : x1;
+	}
+
+	private int childY1(int quadrant) {
+		return quadrant == 1 || quadrant == 2 ? y1 : (int) Math.floor(py);
+	}
+
+	private int childX2(int quadrant) {
+		return quadrant == 1 || quadrant == 4 ? x2 : (int) Math.ceil(px);
+	}
+
+	private int childY2(int quadrant) {
+		return quadrant == 1 || quadrant == 2 ? (int) Math.ceil(py) : y2;
+	}
+
+	// the quadrant holding the child
+	private int quadrantOf(PointQuadtree<E> child) {
+		return child == c1 ? 1 : child == c2 ? 2 : child == c3 ? 3 : 4;
+	}
+
+	private void setChild(int quadrant, PointQuadtree<E> child) {
+		if (quadrant == 1) c1 = child;
+		else if (quadrant == 2) c2 = child;
+		else if (quadrant == 3) c3 = child;
+		else c4 = child;
+	}
+
+	private boolean isLeaf() {
+		return c1 == null && c2 == null && c3 == null && c4 == null;
+	}
+
+	// squared distance from (x, y) to the nearest point of this node's region, 0 if inside
+	private double distanceToRectangle(double x, double y) {
+		double dx = Math.max(0, Math.max(x1 - x, x - x2));
+		double dy = Math.max(0, Math.max(y1 - y, y - y2));
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Explicit stack of nodes for the iterative traversals
+	 * Each thread keeps one; a query run from inside another query's action finds it busy and makes its own
+	 * It also keeps the two heaps findNearest needs, made on its first use
+	 */
+	private static class Stack {
+		Object[] items = new Object[64];
+		int top;
+		boolean busy;
+		private Heap nodes, best;
+
+		static Stack acquire() {
+			Stack stack = STACKS.get();
+			if (stack.busy) stack = new Stack();
+			stack.busy = true;
+			return stack;
 		}
 
-	// function to add all points that intersect a circle of given x, y, and r to a list
-	private void addToCircle(List<E> hits,double cx, double cy, double cr){
-		if (Geometry.circleIntersectsRectangle(cx, cy, cr, x1 ,y1, x2, y2)){				// check if the circle intersects rectangle for each node
-			if (Geometry.pointInCircle(point.getX(), point.getY(), cx, cy, cr)){			// if it intersects rectangle, check if it intersects the circle
-				hits.add(point);															// If so, add to list of that is passed in to function
+		void release() {
+			while (top > 0) items[--top] = null;		// (only after an early stop) don't keep nodes reachable
+			if (nodes != null) {
+				nodes.clear();
+				best.clear();
 			}
-			if (hasChild(1)){														// Call function on all of the children of node whose rectangle intersects circle
-				getChild(1).addToCircle(hits,cx, cy, cr);
+			busy = false;
+		}
+
+		Heap nodes() {
+			if (nodes == null) {
+				nodes = new Heap(false);
+				best = new Heap(true);
 			}
-			if (hasChild(2)){
-				getChild(2).addToCircle(hits,cx, cy, cr);
+			return nodes;
+		}
+
+		Heap best() {
+			nodes();
+			return best;
+		}
+
+		// pushed 4 to 1 so they come off 1 to 4
+		void pushChildren(PointQuadtree<?> node) {
+			if (node.c4 != null) push(node.c4);
+			if (node.c3 != null) push(node.c3);
+			if (node.c2 != null) push(node.c2);
+			if (node.c1 != null) push(node.c1);
+		}
+
+		void push(Object item) {
+			if (top == items.length) items = Arrays.copyOf(items, top * 2);
+			items[top++] = item;
+		}
+
+		Object pop() {
+			Object item = items[--top];
+			items[top] = null;
+			return item;
+		}
+	}
+
+	/**
+	 * Binary heap of (node, index, squared distance) entries held in parallel arrays, closest on top (farthest if max)
+	 */
+	private static class Heap {
+		final boolean max;
+		Object[] items = new Object[64];
+		int[] indexes = new int[64];
+		double[] distances = new double[64];
+		int size;
+
+		Heap(boolean max) {
+			this.max = max;
+		}
+
+		void add(Object item, int index, double distance) {
+			if (size == items.length) {
+				items = Arrays.copyOf(items, size * 2);
+				indexes = Arrays.copyOf(indexes, size * 2);
+				distances = Arrays.copyOf(distances, size * 2);
 			}
-			if (hasChild(3)){
-				getChild(3).addToCircle(hits,cx, cy, cr);
+			int at = size++;
+			while (at > 0) {
+				int up = (at - 1) >>> 1;
+				if (!above(distance, distances[up])) break;
+				move(up, at);
+				at = up;
 			}
-			if (hasChild(4)){
-				getChild(4).addToCircle(hits,cx, cy, cr);
+			set(at, item, index, distance);
+		}
+
+		double topDistance() {
+			return distances[0];
+		}
+
+		int topIndex() {
+			return indexes[0];
+		}
+
+		// removes the top entry and returns its item
+		Object poll() {
+			Object top = items[0];
+			int last = --size;
+			Object item = items[last];
+			int index = indexes[last];
+			double distance = distances[last];
+			items[last] = null;
+			int at = 0;
+			while (true) {
+				int down = 2 * at + 1;
+				if (down >= size) break;
+				if (down + 1 < size && above(distances[down + 1], distances[down])) down++;
+				if (!above(distances[down], distance)) break;
+				move(down, at);
+				at = down;
 			}
+			if (size > 0) set(at, item, index, distance);
+			return top;
+		}
+
+		void clear() {
+			while (size > 0) items[--size] = null;
+		}
 
+		private boolean above(double a, double b) {
+			return max ? a > b : a < b;
 		}
 
+		private void move(int from, int to) {
+			set(to, items[from], indexes[from], distances[from]);
+		}
+
+		private void set(int at, Object item, int index, double distance) {
+			items[at] = item;
+			indexes[at] = index;
+			distances[at] = distance;
+		}
 	}
 }
@@ -0,0 +1,223 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.ToIntFunction;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A built PointQuadtree saved to a file, and queried straight from a read-only memory mapping of it, so opening one
+ * takes no inserts and builds no objects; processes mapping the same file share its pages
+ * Points are saved as int ids (from a function given when writing) and queries report those ids
+ *
+ * File layout (big-endian): magic, version, number of records, number of points, then one 56-byte record per node,
+ * root first: region x1, y1, x2, y2 (ints), point x, y (doubles), children 1-4 (record numbers, -1 for none),
+ * point id (-1 for a removed point), and the record number of the next point at the same position (-1 for none);
+ * those further points follow all the nodes, as records with the same region and position and no children
+ * The records are mapped in chunks of up to BlockHuffman.MAP_SEGMENT bytes, each a whole number of records, so no
+ * record straddles two mappings and the file is not limited to what one mapping can hold
+ */
+public class PointQuadtreeSnapshot {
+	public static final int MAGIC = 0x50515453;				// "PQTS"
+	public static final int VERSION = 2;
+	private static final int HEADER = 16;
+	private static final int RECORD = 56;
+	private static final int MAX_RECORDS = Integer.MAX_VALUE;	// record numbers are ints
+	static final int CHUNK_RECORDS = (int) (BlockHuffman.MAP_SEGMENT / RECORD);
+
+	private final ByteBuffer[] chunks;						// the mapped records, chunkBytes each but the last
+	private final long chunkBytes;
+	private final int recordCount, size;
+
+	private PointQuadtreeSnapshot(ByteBuffer[] chunks, long chunkBytes, int recordCount, int size) {
+		this.chunks = chunks;
+		this.chunkBytes = chunkBytes;
+		this.recordCount = recordCount;
+		this.size = size;
+	}
+
+	/**
+	 * Writes the tree to fileName, saving each point as id.applyAsInt(point)
+	 * @param id	gives each point a non-negative id, e.g. its index in the caller's own array
+	 */
+	public static <E extends Point2D> void write(PointQuadtree<E> tree, ToIntFunction<? super E> id, String fileName) throws IOException {
+		List<PointQuadtree<E>> order = new ArrayList<PointQuadtree<E>>();		// breadth first, so a node's number is known before its parent is written
+		long records = 0;
+		order.add(tree);
+		for (int i = 0; i < order.size(); i++) {
+			PointQuadtree<E> node = order.get(i);
+			for (int q = 1; q <= 4; q++) {
+				if (node.hasChild(q)) order.add(node.getChild(q));
+			}
+			records += Math.max(1, node.pointCount());
+			if (records > MAX_RECORDS) {
+				throw new IllegalArgumentException("Tree needs more than " + MAX_RECORDS + " records");
+			}
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt((int) records);
+			out.writeInt(tree.size());
+			int next = 1;										// number of the next node's first child, in breadth-first order
+			int further = order.size();							// number of the next node's second point, once all the nodes are written
+			for (PointQuadtree<E> node : order) {
+				int held = node.pointCount();
+				writeRegion(out, node);
+				for (int q = 1; q <= 4; q++) {
+					out.writeInt(node.hasChild(q) ? next++ : -1);
+				}
+				out.writeInt(held > 0 ? pointId(id, node.getPoint(0)) : -1);
+				out.writeInt(held > 1 ? further : -1);
+				further += Math.max(0, held - 1);
+			}
+			int number = order.size();
+			for (PointQuadtree<E> node : order) {
+				for (int i = 1, held = node.pointCount(); i < held; i++, number++) {
+					writeRegion(out, node);
+					for (int q = 1; q <= 4; q++) out.writeInt(-1);
+					out.writeInt(pointId(id, node.getPoint(i)));
+					out.writeInt(i + 1 < held ? number + 1 : -1);
+				}
+			}
+		}
+	}
+
+	// writes the node's region and the position its points are stored at (NaN once it has none)
+	private static void writeRegion(DataOutputStream out, PointQuadtree<?> node) throws IOException {
+		boolean held = node.getPoint() != null;
+		out.writeInt(node.getX1());
+		out.writeInt(node.getY1());
+		out.writeInt(node.getX2());
+		out.writeInt(node.getY2());
+		out.writeDouble(held ? node.getPointX() : Double.NaN);		// where the tree has it, which queries test
+		out.writeDouble(held ? node.getPointY() : Double.NaN);
+	}
+
+	private static <E> int pointId(ToIntFunction<? super E> id, E point) {
+		int pointId = id.applyAsInt(point);
+		if (pointId < 0) {
+			throw new IllegalArgumentException("Point ids must not be negative: " + pointId);
+		}
+		return pointId;
+	}
+
+	/**
+	 * Maps a file written by write, read-only
+	 * @throws IOException if the file cannot be read or was not written by write
+	 */
+	public static PointQuadtreeSnapshot open(String fileName) throws IOException {
+		return open(fileName, CHUNK_RECORDS);
+	}
+
+	// maps the records chunkRecords at a time (fewer than CHUNK_RECORDS lets small files use several chunks)
+	static PointQuadtreeSnapshot open(String fileName, int chunkRecords) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), READ)) {
+			long length = channel.size();
+			if (length < HEADER) {
+				throw new IOException("Not a quadtree snapshot: " + fileName);
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+			if (header.getInt(0) != MAGIC) {
+				throw new IOException("Not a quadtree snapshot: " + fileName);
+			}
+			int version = header.getInt(4);
+			if (version != VERSION) {
+				throw new IOException("Unsupported quadtree snapshot version " + version);
+			}
+			int recordCount = header.getInt(8), size = header.getInt(12);
+			if (recordCount < 1 || recordCount > MAX_RECORDS || length != HEADER + (long) RECORD * recordCount || size < 0 || size > recordCount) {
+				throw new IOException("Corrupt quadtree snapshot: " + fileName);
+			}
+			long chunkBytes = (long) RECORD * chunkRecords;
+			int chunks = (int) ((recordCount + (long) chunkRecords - 1) / chunkRecords);
+			long[] starts = new long[chunks], lengths = new long[chunks];
+			for (int chunk = 0; chunk < chunks; chunk++) {
+				starts[chunk] = HEADER + chunk * chunkBytes;
+				lengths[chunk] = Math.min(chunkBytes, length - starts[chunk]);
+			}
+			ByteBuffer[] records = BlockHuffman.mapRegions(channel, FileChannel.MapMode.READ_ONLY, starts, lengths);	// stay valid after the channel is closed
+			return new PointQuadtreeSnapshot(records, chunkBytes, recordCount, size);
+		}
+	}
+
+	/**
+	 * Finds the number of points in the saved tree
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Finds the number of records in the saved tree: one per node (including those whose point was removed),
+	 * and one per further point at a node's position
+	 */
+	public int recordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Builds a list of the ids of the points within the circle, in the same order as PointQuadtree.findInCircle
+	 */
+	public List<Integer> findInCircle(double cx, double cy, double cr) {
+		List<Integer> hits = new ArrayList<Integer>();
+		findInCircle(cx, cy, cr, hits::add);
+		return hits;
+	}
+
+	/**
+	 * Passes the id of each point within the circle to the action, in the same order as PointQuadtree.findInCircle,
+	 * reading the nodes straight from the mappings; safe to call from many threads at once
+	 * @return		the number of ids passed
+	 */
+	public int findInCircle(double cx, double cy, double cr, IntConsumer action) {
+		int hits = 0;
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int node = stack[--top];
+			long record = (long) RECORD * node;
+			if (!Geometry.circleIntersectsRectangle(cx, cy, cr, getInt(record), getInt(record + 4),
+					getInt(record + 8), getInt(record + 12))) continue;
+			int id = getInt(record + 48);
+			if (id >= 0 && Geometry.pointInCircle(getDouble(record + 16), getDouble(record + 24), cx, cy, cr)) {
+				action.accept(id);
+				hits++;
+				for (int same = getInt(record + 52), from = node; same >= 0; from = same, same = getInt((long) RECORD * same + 52)) {
+					if (same <= from || same >= recordCount) {		// further points always come after, so no cycles
+						throw new IllegalStateException("Corrupt quadtree snapshot: record " + from + " is followed by " + same + " of " + recordCount);
+					}
+					action.accept(getInt((long) RECORD * same + 48));
+					hits++;
+				}
+			}
+			if (top + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+			for (int q = 3; q >= 0; q--) {						// push 4 to 1 so children are visited 1 to 4
+				int child = getInt(record + 32 + 4 * q);
+				if (child >= 0) {
+					if (child <= node || child >= recordCount) {		// children always come after their parent, so no cycles
+						throw new IllegalStateException("Corrupt quadtree snapshot: node " + node + " has child " + child + " of " + recordCount);
+					}
+					stack[top++] = child;
+				}
+			}
+		}
+		return hits;
+	}
+
+	// the int or double at the given offset into the records; a field never straddles chunks, which hold whole records
+	private int getInt(long offset) {
+		return chunks[(int) (offset / chunkBytes)].getInt((int) (offset % chunkBytes));
+	}
+
+	private double getDouble(long offset) {
+		return chunks[(int) (offset / chunkBytes)].getDouble((int) (offset % chunkBytes));
+	}
+}
@@ -0,0 +1,130 @@
+import java.util.Arrays;
+
+/**
+ * Counts of non-negative int symbols (chars, code points, ...) in an open-addressing hash table of primitives
+ * Replaces a Map<Character, Integer> for counting: no boxing and a single probe sequence per increment
+ */
+public class SymbolCounts {
+    private static final int EMPTY = -1;        // marks a free slot; symbols are never negative
+
+    private int[] keys;                         // symbol in each slot, or EMPTY
+    private long[] counts;                      // count of the symbol in the same slot
+    private int size;                           // number of distinct symbols
+    private int shift;                          // 32 - log2(table length), for the multiplicative hash
+
+    /**
+     * Initializes empty counts sized for a typical text alphabet
+     */
+    public SymbolCounts() {
+        this(128);
+    }
+
+    /**
+     * Initializes empty counts with room for the expected number of distinct symbols before resizing
+     */
+    public SymbolCounts(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 4) * 2 - 1) << 1;      // at most half full
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        counts = new long[capacity];
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    // slot holding the symbol, or the free slot where it belongs
+    private int slot(int symbol) {
+        int mask = keys.length - 1;
+        int i = (symbol * 0x9E3779B9) >>> shift;
+        while (keys[i] != symbol && keys[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Adds n occurrences of the symbol
+     */
+    public void add(int symbol, long n) {
+        if (symbol < 0) {
+            throw new IllegalArgumentException("Symbols must be non-negative: " + symbol);
+        }
+        int i = slot(symbol);
+        if (keys[i] == EMPTY) {
+            keys[i] = symbol;
+            if (++size * 2 > keys.length) {
+                grow();
+                i = slot(symbol);
+            }
+        }
+        counts[i] += n;
+    }
+
+    /**
+     * Adds one occurrence of the symbol
+     */
+    public void increment(int symbol) {
+        add(symbol, 1);
+    }
+
+    /**
+     * Adds all of the other counts into these (e.g., to merge counts of separate parts of a file)
+     */
+    public void addAll(SymbolCounts other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY) add(other.keys[i], other.counts[i]);
+        }
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        long[] oldCounts = counts;
+        allocate(keys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                counts[j] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * Returns how many times the symbol was counted (0 if never)
+     */
+    public long get(int symbol) {
+        int i = slot(symbol);
+        return keys[i] == EMPTY ? 0 : counts[i];
+    }
+
+    /**
+     * Returns the number of distinct symbols
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the total of all counts
+     */
+    public long total() {
+        long sum = 0;
+        for (long count : counts) sum += count;
+        return sum;
+    }
+
+    /**
+     * Returns the distinct symbols in increasing order
+     */
+    public int[] symbols() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int key : keys) {
+            if (key != EMPTY) result[n++] = key;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+}
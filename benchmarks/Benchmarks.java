@@ -0,0 +1,25 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with the gc profiler, which adds allocation rate (MB/s and bytes per op) to every result
+ * Built into target/benchmarks.jar by the pom, which lists the course classes it needs on the source path;
+ * run from the directory holding Inputs/ so the real corpus is found
+ */
+public class Benchmarks {
+    /**
+     * @param args  optional regular expression selecting benchmarks, e.g. "PointQuadtree" or "Huffman.*compression"
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "Huffman|PointQuadtree")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
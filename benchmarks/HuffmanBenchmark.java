@@ -0,0 +1,154 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for each stage of the Huffman pipeline in HuffmanEncoding (counting, code construction, compression,
+ * decompression), plus the byte-mode paths
+ * Inputs are either synthetic text (words drawn with a skewed, Zipf-like distribution) or a real corpus
+ * (Inputs/WarAndPeace.txt, repeated or cut to the requested size)
+ * Besides ops/s, every benchmark counts the input bytes it processed, so JMH also reports bytes/s (divide by 2^20 for MB/s)
+ * Run through Benchmarks.main to get the allocation rate from the gc profiler as well
+ * JMH needs benchmarks in a named package, and the pipeline is in the default package, which a named package cannot
+ * see, so the stages are called through Target, implemented by HuffmanBenchmarkTarget (loaded by name)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HuffmanBenchmark {
+    @Param({"65536", "1048576", "16777216"})
+    public int size;                                    // input size in bytes
+
+    @Param({"synthetic", "WarAndPeace"})
+    public String corpus;
+
+    private Path directory;
+    private String pathName;                            // input file without ".txt", as the pipeline expects
+    private String blockPathName;                       // copy of the input for block mode, whose compressed file has a different format
+    private Target target;
+
+    /**
+     * The pipeline stages, run on the files set up for this trial
+     */
+    public interface Target {
+        Object charFrequencies();
+        Object byteFrequencies();
+        Object codeConstruction();
+        void compression() throws IOException;
+        void decompression() throws IOException;
+        void blockCompression() throws IOException;
+        void blockDecompression() throws IOException;
+    }
+
+    /**
+     * Bytes of input processed, reported by JMH as a rate next to ops/s
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("huffman-bench");
+        pathName = directory.resolve("input").toString();
+        blockPathName = directory.resolve("block").toString();
+        byte[] data = input(corpus, size);
+        Files.write(Paths.get(pathName + ".txt"), data);
+        Files.write(Paths.get(blockPathName + ".txt"), data);
+
+        target = (Target) Class.forName("HuffmanBenchmarkTarget").getConstructor(String.class, String.class)
+                .newInstance(pathName, blockPathName);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    // builds the input text: the real corpus repeated or cut to size, or synthetic words until size bytes
+    static byte[] input(String corpus, int size) throws IOException {
+        byte[] source;
+        if (corpus.equals("synthetic")) {
+            String[] words = {"the", "of", "and", "a", "to", "in", "he", "was", "that", "his", "with", "had", "it",
+                    "Pierre", "Natasha", "prince", "said", "war", "peace", "Moscow", ",", ".", "\n"};
+            Random random = new Random(42);
+            StringBuilder text = new StringBuilder(size);
+            while (text.length() < size) {
+                int w = (int) (words.length * Math.pow(random.nextDouble(), 2.5));      // low indices much more likely
+                text.append(words[w]).append(' ');
+            }
+            source = text.toString().getBytes("UTF-8");
+        }
+        else {
+            Path file = Paths.get("Inputs", corpus + ".txt");
+            if (!Files.exists(file)) {
+                throw new IllegalStateException("Corpus " + file.toAbsolutePath() + " not found; run from the directory holding Inputs/");
+            }
+            source = Files.readAllBytes(file);
+        }
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i += source.length) {
+            System.arraycopy(source, 0, data, i, Math.min(source.length, size - i));
+        }
+        return data;
+    }
+
+    @Benchmark
+    public Object charFrequencies(Bytes counter) {
+        counter.bytes += size;
+        return target.charFrequencies();
+    }
+
+    @Benchmark
+    public Object byteFrequencies(Bytes counter) {
+        counter.bytes += size;
+        return target.byteFrequencies();
+    }
+
+    @Benchmark
+    public Object codeConstruction() {
+        return target.codeConstruction();
+    }
+
+    @Benchmark
+    public void compression(Bytes counter) throws IOException {
+        counter.bytes += size;
+        target.compression();
+    }
+
+    @Benchmark
+    public void decompression(Bytes counter) throws IOException {
+        counter.bytes += size;
+        target.decompression();
+    }
+
+    @Benchmark
+    public void blockCompression(Bytes counter) throws IOException {
+        counter.bytes += size;
+        target.blockCompression();
+    }
+
+    @Benchmark
+    public void blockDecompression(Bytes counter) throws IOException {
+        counter.bytes += size;
+        target.blockDecompression();
+    }
+}
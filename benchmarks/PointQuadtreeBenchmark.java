@@ -0,0 +1,139 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for PointQuadtree: building by insert, circle queries, and listing all points
+ * The bucket* benchmarks do the same with BucketQuadtree, for comparison on the same points and circles
+ * Points are spread uniformly over the region, or clustered around a few centers (like locations in a city)
+ * Run through Benchmarks.main to get the allocation rate from the gc profiler as well
+ * The trees are called through Target, implemented by PointQuadtreeBenchmarkTarget in the default package
+ * (see HuffmanBenchmark for why)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PointQuadtreeBenchmark {
+	public static final int WIDTH = 100000, HEIGHT = 100000;	// region covered by the tree
+	private static final int QUERIES = 1024;					// query circles, cycled through
+
+	@Param({"10000", "1000000"})
+	public int n;								// number of points
+
+	@Param({"uniform", "clustered"})
+	public String distribution;
+
+	@Param({"100", "1000"})
+	public double radius;						// query circle radius
+
+	private Target target;
+	private double[] cx, cy;					// query circle centers
+	private int next;							// next query circle
+
+	/**
+	 * The trees measured, over the points of this trial
+	 */
+	public interface Target {
+		Object insert();						// builds a PointQuadtree by inserting every point
+		List<?> findInCircle(double cx, double cy, double cr);
+		List<?> allPoints();
+		int size();
+		Object bucketInsert();					// builds a BucketQuadtree the same way
+		List<?> bucketFindInCircle(double cx, double cy, double cr);
+	}
+
+	/**
+	 * Points inserted or returned, reported by JMH as a rate next to ops/s
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counts {
+		public long points;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			points = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws ReflectiveOperationException {
+		Random random = new Random(42);
+		double[] xs = new double[n], ys = new double[n];	// the points' coordinates
+		double[][] centers = new double[20][];
+		for (int c = 0; c < centers.length; c++) {
+			centers[c] = new double[] { random.nextInt(WIDTH), random.nextInt(HEIGHT) };
+		}
+		for (int i = 0; i < n; i++) {				// in random order, uniform or around 20 gaussian clusters, all inside the region
+			if (distribution.equals("uniform")) {
+				xs[i] = random.nextInt(WIDTH);
+				ys[i] = random.nextInt(HEIGHT);
+			}
+			else {
+				double[] center = centers[random.nextInt(centers.length)];
+				double x = center[0] + random.nextGaussian() * WIDTH / 100;
+				double y = center[1] + random.nextGaussian() * HEIGHT / 100;
+				xs[i] = Math.max(0, Math.min(WIDTH - 1, (int) x));
+				ys[i] = Math.max(0, Math.min(HEIGHT - 1, (int) y));
+			}
+		}
+		target = (Target) Class.forName("PointQuadtreeBenchmarkTarget")
+				.getConstructor(double[].class, double[].class, int.class, int.class).newInstance(xs, ys, WIDTH, HEIGHT);
+
+		random = new Random(7);
+		cx = new double[QUERIES];
+		cy = new double[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {						// centered on data points, so queries follow the data like real lookups
+			int center = random.nextInt(n);
+			cx[i] = xs[center];
+			cy[i] = ys[center];
+		}
+	}
+
+	@Benchmark
+	public Object insert(Counts counts) {
+		counts.points += n;
+		return target.insert();
+	}
+
+	@Benchmark
+	public List<?> findInCircle(Counts counts) {
+		int q = next++ & (QUERIES - 1);
+		List<?> hits = target.findInCircle(cx[q], cy[q], radius);
+		counts.points += hits.size();
+		return hits;
+	}
+
+	@Benchmark
+	public List<?> allPoints(Counts counts) {
+		counts.points += n;
+		return target.allPoints();
+	}
+
+	@Benchmark
+	public void size(Blackhole blackhole) {
+		blackhole.consume(target.size());
+	}
+
+	@Benchmark
+	public Object bucketInsert(Counts counts) {
+		counts.points += n;
+		return target.bucketInsert();
+	}
+
+	@Benchmark
+	public List<?> bucketFindInCircle(Counts counts) {
+		int q = next++ & (QUERIES - 1);
+		List<?> hits = target.bucketFindInCircle(cx[q], cy[q], radius);
+		counts.points += hits.size();
+		return hits;
+	}
+}
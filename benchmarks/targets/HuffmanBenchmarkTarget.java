@@ -0,0 +1,50 @@
+import benchmarks.HuffmanBenchmark;
+
+import java.io.IOException;
+
+/**
+ * The HuffmanEncoding and BlockHuffman calls HuffmanBenchmark measures, on one input file and its block-mode copy
+ * Counts the characters and builds the code once, and compresses both files so decompression has something to read
+ */
+public class HuffmanBenchmarkTarget implements HuffmanBenchmark.Target {
+    private final String pathName, blockPathName;
+    private final SymbolCounts counts;
+    private final CanonicalCode code;
+
+    public HuffmanBenchmarkTarget(String pathName, String blockPathName) throws IOException {
+        this.pathName = pathName;
+        this.blockPathName = blockPathName;
+        counts = HuffmanEncoding.CharFrequencies(pathName);
+        code = CanonicalCode.fromCounts(counts, CodeLengths.DEFAULT_MAX_LENGTH);
+        HuffmanEncoding.Compression(pathName, code);
+        BlockHuffman.compress(blockPathName);
+    }
+
+    public Object charFrequencies() {
+        return HuffmanEncoding.CharFrequencies(pathName);
+    }
+
+    public Object byteFrequencies() {
+        return HuffmanEncoding.ByteFrequencies(pathName);
+    }
+
+    public Object codeConstruction() {
+        return CanonicalCode.fromCounts(counts, CodeLengths.DEFAULT_MAX_LENGTH);
+    }
+
+    public void compression() throws IOException {
+        HuffmanEncoding.Compression(pathName, code);
+    }
+
+    public void decompression() throws IOException {
+        HuffmanEncoding.Decompression(pathName);
+    }
+
+    public void blockCompression() throws IOException {
+        BlockHuffman.compress(blockPathName);
+    }
+
+    public void blockDecompression() throws IOException {
+        BlockHuffman.decompress(blockPathName);
+    }
+}
@@ -0,0 +1,79 @@
+import benchmarks.PointQuadtreeBenchmark;
+
+import java.util.List;
+
+/**
+ * The PointQuadtree and BucketQuadtree calls PointQuadtreeBenchmark measures, on one set of points
+ * Builds both trees once for the queries; insert and bucketInsert build new ones each time
+ */
+public class PointQuadtreeBenchmarkTarget implements PointQuadtreeBenchmark.Target {
+	private final Point[] points;
+	private final int width, height;
+	private final PointQuadtree<Point> tree;
+	private final BucketQuadtree<Point> buckets;
+
+	/**
+	 * Minimal Point2D for the benchmark
+	 */
+	public static class Point implements Point2D {
+		private final double x, y;
+
+		public Point(double x, double y) {
+			this.x = x; this.y = y;
+		}
+
+		public double getX() {
+			return x;
+		}
+
+		public double getY() {
+			return y;
+		}
+	}
+
+	/**
+	 * Holds the points (xs[i], ys[i]), in order, in a region from (0, 0) to (width, height)
+	 */
+	public PointQuadtreeBenchmarkTarget(double[] xs, double[] ys, int width, int height) {
+		points = new Point[xs.length];
+		for (int i = 0; i < points.length; i++) {
+			points[i] = new Point(xs[i], ys[i]);
+		}
+		this.width = width;
+		this.height = height;
+		tree = insert();
+		buckets = bucketInsert();
+	}
+
+	public PointQuadtree<Point> insert() {
+		PointQuadtree<Point> tree = new PointQuadtree<Point>(points[0], 0, 0, width, height);
+		for (int i = 1; i < points.length; i++) {
+			tree.insert(points[i]);
+		}
+		return tree;
+	}
+
+	public List<Point> findInCircle(double cx, double cy, double cr) {
+		return tree.findInCircle(cx, cy, cr);
+	}
+
+	public List<Point> allPoints() {
+		return tree.allPoints();
+	}
+
+	public int size() {
+		return tree.size();
+	}
+
+	public BucketQuadtree<Point> bucketInsert() {
+		BucketQuadtree<Point> tree = new BucketQuadtree<Point>(0, 0, width, height);
+		for (Point point : points) {
+			tree.insert(point);
+		}
+		return tree;
+	}
+
+	public List<Point> bucketFindInCircle(double cx, double cy, double cr) {
+		return buckets.findInCircle(cx, cy, cr);
+	}
+}
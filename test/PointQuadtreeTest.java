@@ -0,0 +1,128 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Builds and inserts inputs whose points share coordinates or positions, which used to blow up or lose points
+ */
+public class PointQuadtreeTest {
+	private static final int N = 16000;
+
+	private static class Dot implements Point2D {
+		final double x, y;
+
+		Dot(double x, double y) {
+			this.x = x; this.y = y;
+		}
+
+		public double getX() {
+			return x;
+		}
+
+		public double getY() {
+			return y;
+		}
+	}
+
+	@Test
+	public void buildsSharedX() {
+		List<Dot> dots = new ArrayList<Dot>();
+		for (int i = 0; i < N; i++) dots.add(new Dot(50, i % 100));			// a vertical line, each position 160 times
+		check(PointQuadtree.build(dots, 0, 0, 100, 100), dots);
+	}
+
+	@Test
+	public void buildsSharedXAtFractionalY() {
+		List<Dot> dots = new ArrayList<Dot>();
+		for (int i = 0; i < N; i++) dots.add(new Dot(50.5, i * 100.0 / N));
+		check(PointQuadtree.build(dots, 0, 0, 100, 100), dots);
+	}
+
+	@Test
+	public void buildsDuplicates() {
+		List<Dot> dots = new ArrayList<Dot>();
+		for (int i = 0; i < N; i++) dots.add(new Dot(30, 30));
+		PointQuadtree<Dot> tree = PointQuadtree.build(dots, 0, 0, 100, 100);
+		check(tree, dots);
+		assertEquals(1, nodes(tree), "coincident points share a node");
+	}
+
+	@Test
+	public void buildsGridOfDuplicates() {
+		Random random = new Random(1);
+		List<Dot> dots = new ArrayList<Dot>();
+		for (int i = 0; i < N; i++) dots.add(new Dot(random.nextInt(10), random.nextInt(10)));
+		PointQuadtree<Dot> tree = PointQuadtree.build(dots, 0, 0, 100, 100);
+		check(tree, dots);
+		assertTrue(nodes(tree) <= 100, "one node per distinct position");
+	}
+
+	@Test
+	public void insertsSharedXAndDuplicates() {
+		List<Dot> dots = new ArrayList<Dot>();
+		for (int i = 0; i < N; i++) dots.add(i % 2 == 0 ? new Dot(50, i % 100) : new Dot(30, 30));
+		PointQuadtree<Dot> tree = new PointQuadtree<Dot>(dots.get(0), 0, 0, 100, 100);
+		for (int i = 1; i < N; i++) tree.insert(dots.get(i));
+		assertEquals(N, tree.size());
+		assertEquals(N, tree.allPoints().size());
+		assertTrue(nodes(tree) <= 51, "one node per distinct position");
+	}
+
+	@Test
+	public void queriesDeepChain() throws InterruptedException {
+		List<Dot> dots = new ArrayList<Dot>();
+		for (int i = 0; i < N; i++) dots.add(new Dot(i * 100.0 / N, i * 100.0 / N));		// inserted in order, one child each
+		PointQuadtree<Dot> tree = new PointQuadtree<Dot>(dots.get(0), 0, 0, 100, 100);
+		for (int i = 1; i < N; i++) tree.insert(dots.get(i));
+		int chain = 1;
+		for (PointQuadtree<Dot> node = tree; node.hasChild(4); node = node.getChild(4)) chain++;
+		assertEquals(N, chain);
+		int[] counts = new int[5];
+		Thread small = new Thread(null, () -> {								// a call stack far too small to recurse N deep
+			counts[0] = tree.countInCircle(50, 50, 100);
+			counts[1] = tree.countInRectangle(0, 0, 100, 100);
+			counts[2] = tree.findInRectangle(0, 0, 100, 100).size();
+			counts[3] = tree.findInCircle(50, 50, 100).size();
+			counts[4] = tree.findNearest(100, 100, 10).size();
+		}, "deep", 1 << 17);
+		small.start();
+		small.join();
+		assertArrayEquals(new int[] {N, N, N, N, 10}, counts);
+	}
+
+	// every point is held once, the depth is logarithmic, and circle queries agree with a scan
+	private static void check(PointQuadtree<Dot> tree, List<Dot> dots) {
+		assertEquals(dots.size(), tree.size());
+		assertEquals(dots.size(), tree.allPoints().size());
+		assertTrue(depth(tree) <= 2 + 32 - Integer.numberOfLeadingZeros(dots.size()), "depth " + depth(tree));
+		Random random = new Random(2);
+		for (int k = 0; k < 100; k++) {
+			double cx = random.nextDouble() * 100, cy = random.nextDouble() * 100, cr = random.nextDouble() * 30;
+			int inside = 0;
+			for (Dot dot : dots) {
+				if (Geometry.pointInCircle(dot.x, dot.y, cx, cy, cr)) inside++;
+			}
+			assertEquals(inside, tree.findInCircle(cx, cy, cr).size());
+		}
+	}
+
+	private static int depth(PointQuadtree<Dot> tree) {
+		int depth = 0;
+		for (int q = 1; q <= 4; q++) {
+			if (tree.hasChild(q)) depth = Math.max(depth, depth(tree.getChild(q)));
+		}
+		return depth + 1;
+	}
+
+	private static int nodes(PointQuadtree<Dot> tree) {
+		int nodes = 1;
+		for (int q = 1; q <= 4; q++) {
+			if (tree.hasChild(q)) nodes += nodes(tree.getChild(q));
+		}
+		return nodes;
+	}
+}